@@ -0,0 +1,115 @@
+package indexer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * how often a page was found changed when it was fetched again, to estimate how fast it change.
+ * the changes of a page are taken as a Poisson process of rate r, if n fetches after the first one,
+ * spread over a time T, found X changes:
+ *     r = ln((n + 0.5) / (n - X + 0.5)) * n / T
+ * the estimator of Cho and Garcia-Molina, which stay finite when every fetch found a change.
+ * a page fetched again t after its last fetch has changed with a probability of 1 - e^(-rt).
+ * times are in milliseconds, rates per hour
+ */
+public class ChangeHistory {
+    private static final int SIZE = 32;
+    private static final double HOUR = TimeUnit.HOURS.toMillis(1);
+    /**
+     * a page never fetched since the history is recorded
+     */
+    public static final ChangeHistory NONE = new ChangeHistory(0, 0, 0, 0, 0);
+
+    private final long firstCheck;
+    private final long lastCheck;
+    /**
+     * when the page was last queued to be fetched again
+     */
+    private final long scheduled;
+    private final int numOfCheck;
+    private final int numOfChange;
+
+    private ChangeHistory(long firstCheck, long lastCheck, long scheduled, int numOfCheck, int numOfChange) {
+        this.firstCheck = firstCheck;
+        this.lastCheck = lastCheck;
+        this.scheduled = scheduled;
+        this.numOfCheck = numOfCheck;
+        this.numOfChange = numOfChange;
+    }
+
+    static ChangeHistory fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new ChangeHistory(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+    }
+
+    byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE).putLong(firstCheck).putLong(lastCheck).putLong(scheduled)
+                .putInt(numOfCheck).putInt(numOfChange).array();
+    }
+
+    /**
+     * @param time time of the fetch
+     * @param changed whether the page changed since the last fetch
+     * @return the history after a fetch of the page
+     */
+    ChangeHistory check(long time, boolean changed) {
+        if (lastCheck == 0) {
+            return new ChangeHistory(time, time, scheduled, 0, 0);
+        }
+        return new ChangeHistory(firstCheck, time, scheduled, numOfCheck + 1, numOfChange + (changed ? 1 : 0));
+    }
+
+    /**
+     * @param time time the page is queued
+     * @return the history after the page is queued to be fetched again
+     */
+    ChangeHistory schedule(long time) {
+        return new ChangeHistory(firstCheck, lastCheck, time, numOfCheck, numOfChange);
+    }
+
+    /**
+     * @param now current time
+     * @param timeout time after which a page queued and still not fetched is queued again
+     * @return whether the page is queued and not fetched yet
+     */
+    public boolean isScheduled(long now, long timeout) {
+        return scheduled > lastCheck && now - scheduled < timeout;
+    }
+
+    /**
+     * @return time of the last fetch, 0 if it was never fetched
+     */
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    /**
+     * @param defaultRate rate of a page fetched once only
+     * @return estimated number of change per hour
+     */
+    public double getChangeRate(double defaultRate) {
+        if (numOfCheck == 0 || lastCheck == firstCheck) {
+            return defaultRate;
+        }
+        double interval = (lastCheck - firstCheck) / HOUR / numOfCheck;
+        return Math.log((numOfCheck + 0.5) / (numOfCheck - numOfChange + 0.5)) / interval;
+    }
+
+    /**
+     * the expected freshness gained by fetching the page now
+     * @param now current time
+     * @param changeRate number of change per hour of the page
+     * @return probability that the page changed since its last fetch, 1 if it was never fetched
+     */
+    public double getStaleProbability(long now, double changeRate) {
+        if (lastCheck == 0) {
+            return 1;
+        }
+        return 1 - Math.exp(-changeRate * Math.max(0, now - lastCheck) / HOUR);
+    }
+
+    public String toString() {
+        return numOfChange + " changes in " + numOfCheck + " fetches, " + String.format("%.3f", getChangeRate(0))
+                + " changes per hour";
+    }
+}
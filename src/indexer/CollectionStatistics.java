@@ -0,0 +1,249 @@
+package indexer;
+
+import org.rocksdb.*;
+import util.Converter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * statistics of the whole collection used to weight a term: df of every word, maxTF of every page
+ * and N, the number of indexed page. all of them are kept in arrays indexed by ID and updated
+ * together with the page in the same batch, so no posting list is read to get an idf
+ *
+ * column families:
+ *     documentFrequency: wordID -> df, 4 bytes
+ *     maxTF: pageID -> maxTF, text (shared with the forward index)
+ * N is the number of page having a maxTF, a page without any word is not counted.
+ * the changes of a batch are kept aside and only applied to the arrays once the batch is committed
+ * (see InvertedIndex.commit), so a failed commit leave them as the database
+ */
+public class CollectionStatistics {
+    private static final CollectionStatistics INSTANCE = new CollectionStatistics();
+    private final RocksDB db = Database.getInstance().getDB();
+    private final ColumnFamilyHandle dfHandle = Database.getInstance().getHandle(Database.Family.documentFrequency);
+    private final ColumnFamilyHandle maxTfHandle = Database.getInstance().getHandle(Database.Family.maxTF);
+    /**
+     * wordID -> df
+     */
+    private volatile int[] documentFrequency = new int[1024];
+    /**
+     * pageID -> maxTF, 0 if the page is not indexed
+     */
+    private volatile int[] maxTf = new int[1024];
+    private volatile int numOfPage = 0;
+    /**
+     * changes of the batches not committed yet
+     */
+    private final Map<WriteBatch, Changes> uncommitted = new IdentityHashMap<>();
+
+    /**
+     * changes of one batch
+     */
+    private static class Changes {
+        private final Map<Integer, Integer> documentFrequency = new HashMap<>();
+        private final Map<Integer, Integer> maxTf = new HashMap<>();
+        private int numOfPage;
+    }
+
+    public static CollectionStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    private CollectionStatistics() {
+        RocksIterator iter = db.newIterator(maxTfHandle);
+        for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+            int tf = Integer.parseInt(new String(iter.value()));
+            if (tf > 0) {
+                setMaxTf(Converter.byteArrayToId(iter.key()), tf);
+                numOfPage++;
+            }
+        }
+        iter = db.newIterator(dfHandle);
+        for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+            setDocumentFrequency(Converter.byteArrayToId(iter.key()), ByteBuffer.wrap(iter.value()).getInt());
+        }
+        if (numOfPage > 0 && isDocumentFrequencyEmpty()) {
+            rebuildDocumentFrequency();
+        }
+    }
+
+    private boolean isDocumentFrequencyEmpty() {
+        for (int df : documentFrequency) {
+            if (df != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * count df from the keywords of every page, for a database indexed before the statistics were kept
+     */
+    private void rebuildDocumentFrequency() {
+        System.out.println("rebuild document frequency of " + numOfPage + " pages");
+        Indexer indexer = Indexer.getInstance();
+        RocksIterator iter = db.newIterator(Database.getInstance().getHandle(Database.Family.bodyWords));
+        for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+            for (String word : new String(iter.value()).split(" ")) {
+                int wordID = word.equals("") ? -1 : indexer.searchIDByWord(word, false);
+                if (wordID != -1) {
+                    setDocumentFrequency(wordID, getDocumentFrequency(wordID) + 1);
+                }
+            }
+        }
+        try (WriteBatch batch = new WriteBatch()) {
+            int[] df = documentFrequency;
+            for (int wordID = 0; wordID < df.length; wordID++) {
+                if (df[wordID] > 0) {
+                    batch.put(dfHandle, Converter.idTobyteArray(wordID), ByteBuffer.allocate(4).putInt(df[wordID]).array());
+                }
+            }
+            Database.getInstance().commit(batch);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int[] grow(int[] array, int index) {
+        if (index < array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+    }
+
+    private void setDocumentFrequency(int wordID, int df) {
+        documentFrequency = grow(documentFrequency, wordID);
+        documentFrequency[wordID] = df;
+    }
+
+    private void setMaxTf(int pageID, int tf) {
+        maxTf = grow(maxTf, pageID);
+        maxTf[pageID] = tf;
+    }
+
+    /**
+     * @return N, number of indexed page
+     */
+    public int getNumOfPage() {
+        return numOfPage;
+    }
+
+    /**
+     * @param wordID word ID
+     * @return df, number of indexed page containing the word
+     */
+    public int getDocumentFrequency(int wordID) {
+        int[] df = documentFrequency;
+        return wordID >= 0 && wordID < df.length ? df[wordID] : 0;
+    }
+
+    /**
+     * @param pageID page ID
+     * @return term frequency of the most frequent term in the page, 0 if the page is not indexed
+     */
+    public int getMaxTf(int pageID) {
+        int[] tf = maxTf;
+        return pageID >= 0 && pageID < tf.length ? tf[pageID] : 0;
+    }
+
+    /**
+     * @param wordID word ID
+     * @return idf = log2(N/df)
+     */
+    public double getIdf(int wordID) {
+        return Math.log((double) numOfPage / getDocumentFrequency(wordID)) / Math.log(2);
+    }
+
+    /**
+     * count a newly indexed page, nothing is changed until the batch is committed.
+     * a page without any word is not counted
+     * @param pageID page ID
+     * @param wordIDs distinct words of the page
+     * @param tf maxTF of the page
+     * @param batch batch committing the page
+     */
+    synchronized void addPage(int pageID, Collection<Integer> wordIDs, int tf, WriteBatch batch) throws RocksDBException {
+        if (tf == 0) {
+            return;
+        }
+        Changes changes = uncommitted.computeIfAbsent(batch, b -> new Changes());
+        if (changes.maxTf.getOrDefault(pageID, getMaxTf(pageID)) == 0) {
+            changes.numOfPage++;
+        }
+        changes.maxTf.put(pageID, tf);
+        batch.put(maxTfHandle, Converter.idTobyteArray(pageID), String.valueOf(tf).getBytes());
+        for (int wordID : wordIDs) {
+            updateDocumentFrequency(wordID, 1, changes, batch);
+        }
+    }
+
+    /**
+     * stop counting a page, nothing is changed until the batch is committed
+     * @param pageID page ID
+     * @param wordIDs distinct words of the page
+     * @param batch batch committing the page
+     */
+    synchronized void removePage(int pageID, Collection<Integer> wordIDs, WriteBatch batch) throws RocksDBException {
+        Changes changes = uncommitted.computeIfAbsent(batch, b -> new Changes());
+        if (changes.maxTf.getOrDefault(pageID, getMaxTf(pageID)) == 0) {
+            return;
+        }
+        changes.numOfPage--;
+        changes.maxTf.put(pageID, 0);
+        batch.delete(maxTfHandle, Converter.idTobyteArray(pageID));
+        for (int wordID : wordIDs) {
+            updateDocumentFrequency(wordID, -1, changes, batch);
+        }
+    }
+
+    private void updateDocumentFrequency(int wordID, int change, Changes changes, WriteBatch batch)
+            throws RocksDBException {
+        int df = Math.max(0, changes.documentFrequency.getOrDefault(wordID, getDocumentFrequency(wordID)) + change);
+        changes.documentFrequency.put(wordID, df);
+        if (df == 0) {
+            batch.delete(dfHandle, Converter.idTobyteArray(wordID));
+        } else {
+            batch.put(dfHandle, Converter.idTobyteArray(wordID), ByteBuffer.allocate(4).putInt(df).array());
+        }
+    }
+
+    /**
+     * apply the changes of a batch, call it once the batch is committed
+     * @param batch the batch
+     */
+    synchronized void committed(WriteBatch batch) {
+        Changes changes = uncommitted.remove(batch);
+        if (changes == null) {
+            return;
+        }
+        for (Map.Entry<Integer, Integer> entry : changes.maxTf.entrySet()) {
+            setMaxTf(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Integer, Integer> entry : changes.documentFrequency.entrySet()) {
+            setDocumentFrequency(entry.getKey(), entry.getValue());
+        }
+        numOfPage += changes.numOfPage;
+    }
+
+    /**
+     * forget the changes of a batch, call it if the batch failed to commit
+     * @param batch the batch
+     */
+    synchronized void discard(WriteBatch batch) {
+        uncommitted.remove(batch);
+    }
+
+    public static void main(String[] args) {
+        CollectionStatistics statistics = getInstance();
+        System.out.println("N: " + statistics.getNumOfPage());
+        for (int wordID = 1; wordID <= 10; wordID++) {
+            System.out.println("wordID: " + wordID + ", df: " + statistics.getDocumentFrequency(wordID) +
+                    ", idf: " + statistics.getIdf(wordID));
+        }
+    }
+}
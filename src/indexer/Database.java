@@ -0,0 +1,104 @@
+package indexer;
+
+import org.rocksdb.*;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * the single RocksDB of the search engine, every store is a column family of it
+ * all column families share one write ahead log, one set of background threads, one LRU block cache
+ * and one memtable budget, and the changes of a page to several stores can be committed by one
+ * WriteBatch so a crash never leave them half written
+ */
+public class Database {
+    /**
+     * column families, the name of each constant is the name of the column family
+     */
+    public enum Family {
+        // Indexer
+        pageURLID, wordID,
+        // SegmentManager
+        legacyPostings, postings, positions, segmentInfo, liveDocs, pendingPages,
+        // InvertedIndex (forward index)
+        child, bodyWords, titleWords, maxTF,
+        // CollectionStatistics
+        documentFrequency,
+        // NearDuplicates
+        simHash, simHashBand, duplicateOf,
+        // PageProperty
+        title, url, lastDateOfModification, size, etag, contentHash, changeHistory,
+        // PageRank, PreProcessor
+        pageRank, docLength, pageParent,
+        // Frontier of the spider
+        frontier, seenURL, frontierSequence,
+        // HostMetadata
+        hostMetadata, sitemapLastmod
+    }
+
+    static final String PATH = "database/searchEngineDB";
+    private static final long BLOCK_CACHE_SIZE = 256L * 1024 * 1024;
+    /**
+     * total size of the memtables of all column families
+     */
+    private static final long WRITE_BUFFER_SIZE = 64L * 1024 * 1024;
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    private static final Database INSTANCE = new Database();
+    private RocksDB db;
+    private final EnumMap<Family, ColumnFamilyHandle> handles = new EnumMap<>(Family.class);
+    private final WriteOptions writeOptions = new WriteOptions();
+
+    public static Database getInstance() {
+        return INSTANCE;
+    }
+
+    private Database() {
+        BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                .setBlockCache(new LRUCache(BLOCK_CACHE_SIZE))
+                .setCacheIndexAndFilterBlocks(true);
+        List<ColumnFamilyDescriptor> colFamily = new ArrayList<>();
+        // the default column family is required by RocksDB but not used
+        colFamily.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY,
+                new ColumnFamilyOptions().setTableFormatConfig(tableConfig)));
+        for (Family family : Family.values()) {
+            ColumnFamilyOptions options = new ColumnFamilyOptions().setTableFormatConfig(tableConfig);
+            if (family == Family.legacyPostings) {
+                options.setMergeOperator(new StringAppendOperator(PostingListHandler.CHUNK_DELIMITER));
+            }
+            colFamily.add(new ColumnFamilyDescriptor(family.name().getBytes(), options));
+        }
+        List<ColumnFamilyHandle> opened = new ArrayList<>();
+        try {
+            DBOptions options = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true)
+                    .setDbWriteBufferSize(WRITE_BUFFER_SIZE);
+            db = RocksDB.open(options, PATH, colFamily, opened);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (Family family : Family.values()) {
+            handles.put(family, opened.get(family.ordinal() + 1));
+        }
+    }
+
+    public RocksDB getDB() {
+        return db;
+    }
+
+    public ColumnFamilyHandle getHandle(Family family) {
+        return handles.get(family);
+    }
+
+    /**
+     * write all changes of a batch atomically
+     * @param batch changes to one or more column families
+     */
+    public void commit(WriteBatch batch) throws RocksDBException {
+        db.write(writeOptions, batch);
+    }
+}
@@ -0,0 +1,80 @@
+package indexer;
+
+import org.rocksdb.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * offline copy of the eight old databases into the column families of the single database,
+ * run it once with the search engine stopped, after KeyMigration.
+ * the default column family of each old database go to the family given in DEFAULT_FAMILIES,
+ * every other column family go to the family of the same name.
+ * the old directories are not deleted, remove them by hand once the copy is checked
+ */
+class DatabaseConsolidation {
+    private static final String[] PATHS = {"database/pageURLIDdb", "database/wordIDdb", "database/wordFreqdb",
+            "database/pageDetailDB", "database/pagePropDB", "database/pageRankDB", "database/docLengthDB",
+            "database/pageParentDB"};
+    private static final Database.Family[] DEFAULT_FAMILIES = {Database.Family.pageURLID, Database.Family.wordID,
+            Database.Family.legacyPostings, Database.Family.child, Database.Family.title, Database.Family.pageRank,
+            Database.Family.docLength, Database.Family.pageParent};
+    private static final int BATCH_SIZE = 1000;
+
+    private static void copy(String path, Database.Family defaultFamily) throws RocksDBException {
+        List<ColumnFamilyDescriptor> colFamily = new ArrayList<>();
+        try (Options options = new Options()) {
+            for (byte[] name : RocksDB.listColumnFamilies(options, path)) {
+                // the old wordFreqdb may contain posting list chunks appended by merge
+                colFamily.add(new ColumnFamilyDescriptor(name, new ColumnFamilyOptions()
+                        .setMergeOperator(new StringAppendOperator(PostingListHandler.CHUNK_DELIMITER))));
+            }
+        }
+        if (colFamily.isEmpty()) {
+            colFamily.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
+        }
+        Database database = Database.getInstance();
+        List<ColumnFamilyHandle> handles = new ArrayList<>();
+        try (DBOptions options = new DBOptions();
+             RocksDB db = RocksDB.open(options, path, colFamily, handles)) {
+            for (int i = 0; i < handles.size(); i++) {
+                byte[] name = colFamily.get(i).getName();
+                Database.Family family = Arrays.equals(name, RocksDB.DEFAULT_COLUMN_FAMILY) ?
+                        defaultFamily : Database.Family.valueOf(new String(name));
+                ColumnFamilyHandle target = database.getHandle(family);
+                int numOfKey = 0;
+                try (WriteBatch batch = new WriteBatch();
+                     RocksIterator iter = db.newIterator(handles.get(i))) {
+                    for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                        batch.put(target, iter.key(), iter.value());
+                        numOfKey++;
+                        if (batch.count() >= BATCH_SIZE) {
+                            database.commit(batch);
+                            batch.clear();
+                        }
+                    }
+                    database.commit(batch);
+                }
+                System.out.println(path + " " + new String(name) + " -> " + family + ": " + numOfKey + " keys");
+            }
+            for (ColumnFamilyHandle handle : handles) {
+                handle.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RocksDBException {
+        for (int i = 0; i < PATHS.length; i++) {
+            if (!new File(PATHS[i]).isDirectory()) {
+                System.out.println(PATHS[i] + " not found, skipped");
+                continue;
+            }
+            copy(PATHS[i], DEFAULT_FAMILIES[i]);
+        }
+        for (Database.Family family : Database.Family.values()) {
+            Database.getInstance().getDB().compactRange(Database.getInstance().getHandle(family));
+        }
+    }
+}
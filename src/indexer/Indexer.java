@@ -3,6 +3,8 @@ package indexer;
 import org.rocksdb.*;
 
 import com.google.common.collect.HashBiMap;
+import util.Converter;
+import util.URLCanonicalizer;
 
 import java.io.File;
 import java.util.*;
@@ -11,28 +13,31 @@ public class Indexer {
     private enum IndexType {PageURLID, WordID}
 
     private static final Indexer INSTANCE = new Indexer();
-    private RocksDB pageURLIDdb, wordIDdb;
+    private RocksDB db;
+    private ColumnFamilyHandle pageURLIDHandle, wordIDHandle;
     private Integer wordCount, URLCount;
     private final HashBiMap<Integer, String> pageIndexer = HashBiMap.create();
     private final HashBiMap<Integer, String> wordIndexer = HashBiMap.create();
+    /**
+     * pages recorded before the urls were canonicalized, whose canonical url belong to another page
+     */
+    private final HashMap<Integer, String> duplicatePages = new HashMap<>();
+    private final URLCanonicalizer canonicalizer = URLCanonicalizer.getInstance();
 
     public static Indexer getInstance() {
         return INSTANCE;
     }
 
     /**
-     * open all the database and place the record in hashBiMap and update the counters
+     * open the database and place the record in hashBiMap and update the counters
      */
     private Indexer(){
-        Options options = new Options().setCreateIfMissing(true);
-        try {
-            System.out.println("remember to place database directory and stopword.txt in: "+
-                    new File("").getAbsolutePath());
-            pageURLIDdb = RocksDB.open(options, "database/pageURLIDdb");
-            wordIDdb = RocksDB.open(options, "database/wordIDdb");
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
+        System.out.println("remember to place database directory and stopword.txt in: "+
+                new File("").getAbsolutePath());
+        Database database = Database.getInstance();
+        db = database.getDB();
+        pageURLIDHandle = database.getHandle(Database.Family.pageURLID);
+        wordIDHandle = database.getHandle(Database.Family.wordID);
         wordCount = 0;
         URLCount = 0;
         addPageBiMap();
@@ -40,10 +45,20 @@ public class Indexer {
     }
 
     ///////Page////////
+    /**
+     * urls are canonicalized when loaded, so a page recorded under an old form of its url
+     * is still found. if several pages have the same canonical url the smallest ID is used
+     */
     private void addPageBiMap(){
-        RocksIterator iter = pageURLIDdb.newIterator();
+        RocksIterator iter = db.newIterator(pageURLIDHandle);
         for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-            updatePageBiMap(Integer.parseInt(new String(iter.key())), new String(iter.value()));
+            int pageID = Converter.byteArrayToId(iter.key());
+            String url = canonicalizer.canonicalize(new String(iter.value()));
+            if (pageIndexer.containsValue(url)) {
+                duplicatePages.put(pageID, url);
+            } else {
+                updatePageBiMap(pageID, url);
+            }
             URLCount++;
         }
     }
@@ -55,7 +70,7 @@ public class Indexer {
     private void addPage(String url) {
         try {
             URLCount++;
-            pageURLIDdb.put(Integer.toString(URLCount).getBytes(), url.getBytes());
+            db.put(pageURLIDHandle, Converter.idTobyteArray(URLCount), url.getBytes());
             updatePageBiMap(URLCount, url);
         } catch (RocksDBException e) {
             e.printStackTrace();
@@ -73,6 +88,7 @@ public class Indexer {
      * @return page ID, -1 if no such page
      */
     public Integer searchIDByURL(String url, boolean addIfMissing) {
+        url = canonicalizer.canonicalize(url);
         if (!(pageIndexer.containsValue(url))) {
             if (addIfMissing) {
                 addPage(url);
@@ -86,14 +102,15 @@ public class Indexer {
     }
 
     String searchURLByID(int pageID) {
-        return pageIndexer.getOrDefault(pageID, null);
+        String url = pageIndexer.get(pageID);
+        return url != null ? url : duplicatePages.get(pageID);
     }
 
     ///////Word////////
     private void addWord(String word) {
         try {
             wordCount += 1;
-            wordIDdb.put(Integer.toString(wordCount).getBytes(), word.getBytes());
+            db.put(wordIDHandle, Converter.idTobyteArray(wordCount), word.getBytes());
             updateWordBiMap(wordCount, word);
         } catch (RocksDBException e) {
             e.printStackTrace();
@@ -102,9 +119,9 @@ public class Indexer {
     }
 
     private void addWordBiMap(){
-        RocksIterator iter = wordIDdb.newIterator();
+        RocksIterator iter = db.newIterator(wordIDHandle);
         for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-            updateWordBiMap(Integer.parseInt(new String(iter.key())), new String((iter.value())));
+            updateWordBiMap(Converter.byteArrayToId(iter.key()), new String((iter.value())));
             wordCount++;
         }
     }
@@ -115,7 +132,7 @@ public class Indexer {
      */
     public List<String> getAllStemWord() {
         Set<String> result = new HashSet<>();
-        RocksIterator iter = wordIDdb.newIterator();
+        RocksIterator iter = db.newIterator(wordIDHandle);
         for (iter.seekToFirst(); iter.isValid(); iter.next()) {
             result.add(new String(iter.value()));
         }
@@ -158,30 +175,22 @@ public class Indexer {
     //////////others///////////////////
     private void printAll(IndexType situation) {
         if (situation == IndexType.PageURLID) {
-            RocksIterator iter = pageURLIDdb.newIterator();
+            RocksIterator iter = db.newIterator(pageURLIDHandle);
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("ID: " + new String(iter.key()) + '\n' + new String(iter.value()) + "\n");
+                System.out.println("ID: " + Converter.byteArrayToId(iter.key()) + '\n' + new String(iter.value()) + "\n");
             }
         }
 
         if (situation == IndexType.WordID) {
-            RocksIterator iter = wordIDdb.newIterator();
+            RocksIterator iter = db.newIterator(wordIDHandle);
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("Word ID: " + new String(iter.key()) + '\n' +
+                System.out.println("Word ID: " + Converter.byteArrayToId(iter.key()) + '\n' +
                         "Word: " + new String(iter.value()) + "\n");
             }
         }
 
     }
 
-    void deleteEntry(int wordID) {
-        try {
-            wordIDdb.delete(String.valueOf(wordID).getBytes());
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
-    }
-
     public static void main(String[] args){
         Indexer indexer = getInstance();
         indexer.printAll(IndexType.WordID);
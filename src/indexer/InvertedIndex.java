@@ -21,28 +21,20 @@ public class InvertedIndex {
     private static InvertedIndex INSTANCE = new InvertedIndex();
     private Indexer indexer = Indexer.getInstance();
     private PageProperty pageProperty = PageProperty.getInstance();
-    private RocksDB pageDetailDb, wordIdDb;
-    private List<ColumnFamilyHandle> handles = new Vector<>();
+    private final Database database = Database.getInstance();
+    private final RocksDB pageDetailDb = database.getDB();
+    private final SegmentManager segmentManager = new SegmentManager();
+    private final CollectionStatistics statistics = CollectionStatistics.getInstance();
+    private final NearDuplicates nearDuplicates = NearDuplicates.getInstance();
+    private final List<ColumnFamilyHandle> handles = Arrays.asList(database.getHandle(Database.Family.child),
+            database.getHandle(Database.Family.bodyWords), database.getHandle(Database.Family.titleWords),
+            database.getHandle(Database.Family.maxTF));
 
     public static InvertedIndex getInstance() {
         return INSTANCE;
     }
 
     private InvertedIndex(){
-        Options options = new Options();
-        options.setCreateIfMissing(true);
-        try {
-            wordIdDb = RocksDB.open(options, "database/wordFreqdb");
-            List<ColumnFamilyDescriptor> colFamily = new Vector<>();
-            colFamily.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
-            colFamily.add(new ColumnFamilyDescriptor("bodyWords".getBytes()));
-            colFamily.add(new ColumnFamilyDescriptor("titleWords".getBytes()));
-            colFamily.add(new ColumnFamilyDescriptor("maxTF".getBytes()));
-            DBOptions options2 = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
-            pageDetailDb = RocksDB.open(options2, "database/pageDetailDB", colFamily, handles);
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -56,15 +48,23 @@ public class InvertedIndex {
         return map.keySet();
     }
 
-    public LinkedList<Integer> getWordPositionsInPage(int wordID, int pageID) {
-        try {
-            byte[] record = wordIdDb.get(Converter.idTobyteArray(wordID));
-            HashMap<Integer, LinkedList<Integer>> pos = new PostingListHandler(new String(record)).getPositionsRecord();
-            return pos.get(pageID);
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-            return null;
-        }
+    /**
+     * get the positions of a word in a page
+     * @param wordID word ID
+     * @param pageID page ID
+     * @return sorted positions, null if the word is not in that page
+     */
+    public int[] getWordPositionsInPage(int wordID, int pageID) {
+        return segmentManager.getPositions(wordID, pageID);
+    }
+
+    /**
+     * get the pages containing every word of a phrase, with the positions of each word
+     * @param wordIDs wordID of each word
+     * @return pageID -> {positions of each word, in the order of wordIDs}
+     */
+    public HashMap<Integer, int[][]> getCommonPages(int[] wordIDs) {
+        return segmentManager.getCommonPages(wordIDs);
     }
 
     /**
@@ -89,15 +89,8 @@ public class InvertedIndex {
      * @return df(j)
      */
     private int getDocumentFrequency(String word) {
-        try {
-            int wordID = indexer.searchIDByWord(word, false);
-            String record = new String(wordIdDb.get(Converter.idTobyteArray(wordID)));
-            return record.split(" ").length;
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-            return -1;
-        }
-
+        int wordID = indexer.searchIDByWord(word, false);
+        return statistics.getDocumentFrequency(wordID);
     }
 
     /**
@@ -119,9 +112,7 @@ public class InvertedIndex {
      * @return idf(j)
      */
     private double getIdf(String word) {
-        double N = pageProperty.getNumOfPageFetched();
-        double df = getDocumentFrequency(word);
-        return Math.log(N/df)/Math.log(2);
+        return statistics.getIdf(indexer.searchIDByWord(word, false));
     }
 
     /**
@@ -129,13 +120,7 @@ public class InvertedIndex {
      * @return max Tf(j)
      */
     private int getMaxTf(int pageID) {
-        try {
-            byte[] content = pageDetailDb.get(handles.get(3), Converter.idTobyteArray(pageID));
-            return Integer.parseInt(new String(content));
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-            return -1;
-        }
+        return statistics.getMaxTf(pageID);
     }
 
     /**
@@ -149,6 +134,46 @@ public class InvertedIndex {
         return ((double)getFreqOfWordInParticularPage(word, pageID) / getMaxTf(pageID)) * getIdf(word);
     }
 
+    /**
+     * get term weight w(i,j) from a frequency already read from the posting list
+     * @param wordID word i
+     * @param pageID page j
+     * @param frequency tf(i,j)
+     * @return w(i,j)
+     */
+    public double getTermWeight(int wordID, int pageID, int frequency) {
+        return ((double) frequency / getMaxTf(pageID)) * statistics.getIdf(wordID);
+    }
+
+    /**
+     * get term weight w(i,j) of all pages containing a word with a single read of its posting lists,
+     * the quantized impacts are used, the weight of a page not yet quantized is computed
+     * @param wordID word i
+     * @return pageID j -> w(i,j)
+     */
+    public HashMap<Integer, Double> getTermWeights(int wordID) {
+        HashMap<Integer, Integer> unquantized = new HashMap<>();
+        HashMap<Integer, Double> weights = segmentManager.getImpacts(wordID, unquantized);
+        if (!unquantized.isEmpty()) {
+            double idf = statistics.getIdf(wordID);
+            for (Map.Entry<Integer, Integer> entry : unquantized.entrySet()) {
+                weights.put(entry.getKey(), ((double) entry.getValue() / getMaxTf(entry.getKey())) * idf);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * store the quantized term weight of every posting next to it, run it after a crawl.
+     * segments already quantized are skipped unless the number of page changed by more than maxDrift
+     * @param maxDrift relative change of the number of page allowed, 0 to quantize everything again
+     */
+    public void quantizeImpacts(double maxDrift) {
+        segmentManager.quantizeImpacts((wordID, pageID, frequency) ->
+                        ((double) frequency / getMaxTf(pageID)) * statistics.getIdf(wordID),
+                statistics.getNumOfPage(), maxDrift);
+    }
+
     /**
      * get all unique keyword of a page
      * @param pageID pageID
@@ -165,13 +190,7 @@ public class InvertedIndex {
     }
 
     private HashMap<Integer, Integer> getPostingList(int wordID) {
-        try {
-            byte[] record = wordIdDb.get(Converter.idTobyteArray(wordID));
-            return new PostingListHandler(new String(record)).getFrequencyRecord();
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-            return null;
-        }
+        return segmentManager.getFrequencyRecord(wordID);
     }
 
     /**
@@ -198,44 +217,36 @@ public class InvertedIndex {
 
 
     /**
-     * clear record in inverted index which related to a page
+     * clear record in inverted index which related to a page,
+     * the page is only marked as deleted in its segment, no posting list is rewritten
      * @param pageID page ID
+     * @param batch batch committing the changes of the page
      */
-    public void clearRecord(int pageID) {
-        String[] words = getKeyWords(pageID);
-        for (String word : words) {
-            try {
-                if (word.equals("")) {
-                    continue;
-                }
-                int wordID = indexer.searchIDByWord(word,false);
-                byte[] postingList = wordIdDb.get(Converter.idTobyteArray(wordID));
-                PostingListHandler newRecord = new PostingListHandler(new String(postingList));
-                boolean resultInEmptyPostingList = newRecord.removeRecord(pageID);
-                if (resultInEmptyPostingList) {
-                    wordIdDb.delete(Converter.idTobyteArray(wordID));
-                    indexer.deleteEntry(wordID);
-                } else {
-                    wordIdDb.put(Converter.idTobyteArray(wordID), newRecord.toString().getBytes());
+    public void clearRecord(int pageID, WriteBatch batch) {
+        try {
+            byte[] keywords = pageDetailDb.get(handles.get(1), Converter.idTobyteArray(pageID));
+            List<Integer> wordIDs = new ArrayList<>();
+            for (String keyword : keywords == null ? new String[0] : new String(keywords).split(" ")) {
+                int wordID = keyword.equals("") ? -1 : indexer.searchIDByWord(keyword, false);
+                if (wordID != -1) {
+                    wordIDs.add(wordID);
                 }
-            } catch (RocksDBException e) {
-                e.printStackTrace();
             }
-        }
-        for (ColumnFamilyHandle handle : handles) {
-            try {
-                pageDetailDb.delete(handle, Converter.idTobyteArray(pageID));
-            } catch (RocksDBException e) {
-                e.printStackTrace();
+            statistics.removePage(pageID, wordIDs, batch);
+            segmentManager.deletePage(pageID, batch);
+            nearDuplicates.remove(pageID, batch);
+            for (ColumnFamilyHandle handle : handles) {
+                batch.delete(handle, Converter.idTobyteArray(pageID));
             }
+        } catch (RocksDBException e) {
+            e.printStackTrace();
         }
     }
 
     public String[] getChildIDs(int pageID) {
-        String listOfChild;
         try {
-            listOfChild = new String(pageDetailDb.get(handles.get(0), Converter.idTobyteArray(pageID)));
-            return  listOfChild.split(" ");
+            byte[] listOfChild = pageDetailDb.get(handles.get(0), Converter.idTobyteArray(pageID));
+            return listOfChild == null ? new String[0] : new String(listOfChild).split(" ");
         } catch (RocksDBException e) {
             e.printStackTrace();
             return null;
@@ -302,42 +313,87 @@ public class InvertedIndex {
         return String.valueOf(result);
     }
 
-    private void storeWordFreq(int pageID, Vector<String> keywords) {
-        int maxFreq = 0;
+    /**
+     * group the keywords of a page by word, positions of a word are in increasing order
+     * @param keywords keywords of the page in order of appearance
+     * @return word -> {position}
+     */
+    private static LinkedHashMap<String, int[]> groupPositions(Vector<String> keywords) {
+        LinkedHashMap<String, int[]> frequency = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            frequency.computeIfAbsent(keyword, k -> new int[1])[0]++;
+        }
+        LinkedHashMap<String, int[]> positions = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : frequency.entrySet()) {
+            positions.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
         for (int i = 0; i < keywords.size(); i++) {
-            Integer wordID = indexer.searchIDByWord(keywords.get(i), true);
-            byte[] content;
-            try {
-                content = wordIdDb.get(Converter.idTobyteArray(wordID));
-                PostingListHandler temp;
-                if (content == null) {
-                    temp = new PostingListHandler("");
-                } else {
-                    temp = new PostingListHandler(new String(content));
-                }
-                int tf = temp.addWord(pageID, i);
-                content = temp.toString().getBytes();
-                wordIdDb.put(Converter.idTobyteArray(wordID), content);
-                if (tf > maxFreq) {
-                    maxFreq = tf;
-                }
-            } catch (RocksDBException e) {
-                e.printStackTrace();
+            String keyword = keywords.get(i);
+            positions.get(keyword)[frequency.get(keyword)[0]++] = i;
+        }
+        return positions;
+    }
+
+    /**
+     * index the words of a page into a new segment, nothing is read from the posting lists
+     */
+    private void storeWordFreq(int pageID, Vector<String> keywords, WriteBatch batch) throws RocksDBException {
+        int maxFreq = 0;
+        HashMap<Integer, int[]> wordPositions = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : groupPositions(keywords).entrySet()) {
+            int[] positions = entry.getValue();
+            wordPositions.put(indexer.searchIDByWord(entry.getKey(), true), positions);
+            if (positions.length > maxFreq) {
+                maxFreq = positions.length;
             }
         }
+        segmentManager.addPage(pageID, wordPositions, batch);
+        statistics.addPage(pageID, wordPositions.keySet(), maxFreq, batch);
+    }
+
+    /**
+     * write the recently indexed pages into the posting lists, call it when the crawl is finished
+     */
+    public void flush() {
+        segmentManager.flush();
+    }
+
+    /**
+     * commit all changes of a page at once, then flush the recently indexed pages if there are
+     * too many of them
+     * @param batch changes of the page to page properties, forward index and inverted index
+     */
+    public void commit(WriteBatch batch) {
         try {
-            pageDetailDb.put(handles.get(3), Converter.idTobyteArray(pageID), String.valueOf(maxFreq).getBytes());
+            database.commit(batch);
         } catch (RocksDBException e) {
             e.printStackTrace();
+            statistics.discard(batch);
+            segmentManager.discard(batch);
+            return;
+        } finally {
+            nearDuplicates.release(batch);
         }
+        statistics.committed(batch);
+        segmentManager.committed(batch);
+        segmentManager.flushIfFull();
     }
 
-    public void store(int pageID, String url){
+    /**
+     * index a page, nothing is written until the batch is committed
+     * @param pageID page ID
+     * @param seeker the fetched page
+     * @param batch batch committing the changes of the page
+     */
+    public void store(int pageID, WebInfoSeeker seeker, WriteBatch batch){
+        if (seeker.getFingerprint() != null) {
+            nearDuplicates.add(pageID, seeker.getFingerprint(), batch);
+        }
         try {
-            WebInfoSeeker seeker = new WebInfoSeeker(url);
             //separate title word and content word
             Vector<String> keyWords = seeker.getKeywords();
-            List<String> titleWord = Word.phraseString(pageProperty.getTitle(pageID));
+            List<String> titleWord = Word.phraseString(seeker.getTitle());
             for (String s : titleWord) {
                 try {
                     if (s.equals(keyWords.get(0))) {
@@ -348,7 +404,7 @@ public class InvertedIndex {
                 }
             }
             ///////////////////wordID -> {pageID freq}, pageID ->{tf max}/////////////////////////
-            storeWordFreq(pageID, keyWords);
+            storeWordFreq(pageID, keyWords, batch);
             //////////////////// Page-ID -> {title Words}/////////////////////
             LinkedHashSet<String> uniqueKeyWords0 = new LinkedHashSet<>(titleWord);
             titleWord.clear();
@@ -364,7 +420,7 @@ public class InvertedIndex {
             if (content == null) {
                 content = "".getBytes();
             }
-            pageDetailDb.put(handles.get(2), Integer.toString(pageID).getBytes(), content);
+            batch.put(handles.get(2), Converter.idTobyteArray(pageID), content);
             //////////////////// Page-ID -> {keywords}////////////////////////
             LinkedHashSet<String> uniqueKeyWords = new LinkedHashSet<>(keyWords);
             keyWords.clear();
@@ -380,17 +436,17 @@ public class InvertedIndex {
             if (content == null) {             // if the web no not have any word (avoid crash the program)
                 content = "".getBytes();
             }
-            pageDetailDb.put(handles.get(1), Integer.toString(pageID).getBytes(), content);
+            batch.put(handles.get(1), Converter.idTobyteArray(pageID), content);
             //////////////////pageID -> {child ID}//////////////////////////
-            List<String> child = seeker.getChildLinks();
-            Set<String> childPage = new HashSet<>(child);
+            // links of a same page have the same canonical url, so the same ID
+            Set<Integer> childIDs = new LinkedHashSet<>();
+            for (String link : seeker.getChildLinks()) {
+                childIDs.add(indexer.searchIDByURL(link, true));
+            }
+            childIDs.remove(pageID);
 
             content = null;
-            for (String link : childPage) {
-                if (link.equals(url)) {
-                    continue;
-                }
-                int childID = indexer.searchIDByURL(link, true);
+            for (int childID : childIDs) {
                 if (content == null) {
                     content = Integer.toString(childID).getBytes();
                 } else {
@@ -400,7 +456,7 @@ public class InvertedIndex {
             if (content == null) {             // if the web no not have any child (avoid crash the program)
                 content = "".getBytes();
             }
-            pageDetailDb.put(handles.get(0), Integer.toString(pageID).getBytes(), content);
+            batch.put(handles.get(0), Converter.idTobyteArray(pageID), content);
         } catch (RocksDBException e) {
             e.printStackTrace();
         }
@@ -411,44 +467,40 @@ public class InvertedIndex {
     private void printAll(Type situation) throws RocksDBException {
         //Page-ID -> {keywords}
         if(situation == Type.Content) {
-            RocksIterator iter = pageDetailDb.newIterator();
+            RocksIterator iter = pageDetailDb.newIterator(handles.get(0));
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("page ID: " + new String(iter.key()) + '\n'
+                System.out.println("page ID: " + Converter.byteArrayToId(iter.key()) + '\n'
                         + new String(pageDetailDb.get(handles.get(1), iter.key())) + "\n");
 
             }
         }
 
         if(situation == Type.Child) {
-            RocksIterator iter = pageDetailDb.newIterator();
+            RocksIterator iter = pageDetailDb.newIterator(handles.get(0));
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("ParentID: " + new String(iter.key()) + '\n' +
+                System.out.println("ParentID: " + Converter.byteArrayToId(iter.key()) + '\n' +
                         "Child ID: " + new String(pageDetailDb.get(handles.get(0), iter.key())) + "\n");
             }
         }
 
         if(situation == Type.Title) {
-            RocksIterator iter = pageDetailDb.newIterator();
+            RocksIterator iter = pageDetailDb.newIterator(handles.get(0));
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("ParentID: " + new String(iter.key()) + '\n' +
+                System.out.println("ParentID: " + Converter.byteArrayToId(iter.key()) + '\n' +
                         "Child ID: " + new String(pageDetailDb.get(handles.get(2), iter.key())) + "\n");
             }
         }
 
         if(situation == Type.MaxTf) {
-            RocksIterator iter = pageDetailDb.newIterator();
+            RocksIterator iter = pageDetailDb.newIterator(handles.get(0));
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("pageID: " + new String(iter.key()) + '\n' +
+                System.out.println("pageID: " + Converter.byteArrayToId(iter.key()) + '\n' +
                         "MaxTf: " + new String(pageDetailDb.get(handles.get(3), iter.key())) + "\n");
             }
         }
 
         if (situation == Type.WordID) {
-            RocksIterator iter = wordIdDb.newIterator();
-            for (iter.seekToFirst(); iter.isValid(); iter.next()) {
-                System.out.println("wordID: " + new String(iter.key()) + '\n' +
-                        "appear at: " + new String(iter.value()) + "\n");
-            }
+            segmentManager.printAll();
         }
     }
 
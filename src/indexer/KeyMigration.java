@@ -0,0 +1,87 @@
+package indexer;
+
+import org.rocksdb.*;
+import util.Converter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * offline converter of every database from decimal string keys ("123") to the 4 byte big-endian
+ * keys of Converter.idTobyteArray, run it once with the search engine stopped.
+ * keys that are not decimal string (already converted) are left untouched,
+ * values are not changed
+ */
+class KeyMigration {
+    private static final String[] PATHS = {"database/pageURLIDdb", "database/wordIDdb", "database/wordFreqdb",
+            "database/pageDetailDB", "database/pagePropDB", "database/pageRankDB", "database/docLengthDB",
+            "database/pageParentDB"};
+
+    /**
+     * a converted key of an ID below 2^24 start with byte 0, so it is never a decimal string
+     */
+    private static boolean isDecimalKey(byte[] key) {
+        if (key.length == 0) {
+            return false;
+        }
+        for (byte b : key) {
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void migrate(String path) throws RocksDBException {
+        List<ColumnFamilyDescriptor> colFamily = new ArrayList<>();
+        try (Options options = new Options()) {
+            for (byte[] name : RocksDB.listColumnFamilies(options, path)) {
+                // the old wordFreqdb may contain posting list chunks appended by merge
+                colFamily.add(new ColumnFamilyDescriptor(name, new ColumnFamilyOptions()
+                        .setMergeOperator(new StringAppendOperator(PostingListHandler.CHUNK_DELIMITER))));
+            }
+        }
+        if (colFamily.isEmpty()) {
+            colFamily.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
+        }
+        List<ColumnFamilyHandle> handles = new ArrayList<>();
+        try (DBOptions options = new DBOptions();
+             RocksDB db = RocksDB.open(options, path, colFamily, handles);
+             WriteOptions writeOptions = new WriteOptions().setSync(true)) {
+            for (int i = 0; i < handles.size(); i++) {
+                int numOfKey = 0, numOfConverted = 0;
+                try (WriteBatch batch = new WriteBatch();
+                     RocksIterator iter = db.newIterator(handles.get(i))) {
+                    for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                        numOfKey++;
+                        if (!isDecimalKey(iter.key())) {
+                            continue;
+                        }
+                        int id = Integer.parseInt(new String(iter.key()));
+                        batch.delete(handles.get(i), iter.key());
+                        batch.put(handles.get(i), Converter.idTobyteArray(id), iter.value());
+                        numOfConverted++;
+                    }
+                    db.write(writeOptions, batch);
+                }
+                db.compactRange(handles.get(i));
+                System.out.println(path + " " + new String(colFamily.get(i).getName()) + ": " +
+                        numOfConverted + " of " + numOfKey + " keys converted");
+            }
+            for (ColumnFamilyHandle handle : handles) {
+                handle.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RocksDBException {
+        for (String path : PATHS) {
+            if (!new File(path).isDirectory()) {
+                System.out.println(path + " not found, skipped");
+                continue;
+            }
+            migrate(path);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package indexer;
+
+import org.rocksdb.*;
+import util.Converter;
+import util.SimHash;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * SimHash fingerprints of the indexed pages, to find a page with nearly the same content as a new one.
+ * the 64 bits of a fingerprint are cut into NUM_OF_BAND bands of 16 bits, two fingerprints at a
+ * distance of at most MAX_DISTANCE (< NUM_OF_BAND) have at least one band in common, so only the pages
+ * sharing a band with the new page are compared.
+ * the fingerprints of a batch are also kept in memory until the batch is committed (see InvertedIndex.commit),
+ * so the copies of a page indexed in the same batch are found as well
+ *
+ * column families:
+ *     simHash: pageID -> fingerprint, 8 bytes
+ *     simHashBand: band index (1 byte) + band (2 bytes) + pageID -> nothing
+ *     duplicateOf: pageID -> pageID of the indexed page it duplicates, 4 bytes
+ */
+public class NearDuplicates {
+    private static final NearDuplicates INSTANCE = new NearDuplicates();
+    private static final int NUM_OF_BAND = 4;
+    private static final int BAND_BITS = 64 / NUM_OF_BAND;
+    public static final int MAX_DISTANCE = 3;
+    /**
+     * a page with fewer shingles is too short to tell a duplicate from a similar page
+     */
+    public static final int MIN_SHINGLES = 16;
+
+    private final Database database = Database.getInstance();
+    private final RocksDB db = database.getDB();
+    private final ColumnFamilyHandle fingerprintHandle = database.getHandle(Database.Family.simHash);
+    private final ColumnFamilyHandle bandHandle = database.getHandle(Database.Family.simHashBand);
+    private final ColumnFamilyHandle duplicateHandle = database.getHandle(Database.Family.duplicateOf);
+    /**
+     * pageID -> fingerprint of the pages added by the batches not committed yet
+     */
+    private final Map<WriteBatch, Map<Integer, Long>> uncommitted = new IdentityHashMap<>();
+
+    public static NearDuplicates getInstance() {
+        return INSTANCE;
+    }
+
+    private NearDuplicates() {
+    }
+
+    private static byte[] bandPrefix(int band, long fingerprint) {
+        int value = (int) (fingerprint >>> (band * BAND_BITS)) & 0xFFFF;
+        return new byte[]{(byte) band, (byte) (value >>> 8), (byte) value};
+    }
+
+    private static byte[] bandKey(int band, long fingerprint, int pageID) {
+        return ByteBuffer.allocate(7).put(bandPrefix(band, fingerprint)).putInt(pageID).array();
+    }
+
+    /**
+     * @param pageID page ID
+     * @return fingerprint of the page, null if the page has none
+     */
+    public Long getFingerprint(int pageID) {
+        try {
+            byte[] value = db.get(fingerprintHandle, Converter.idTobyteArray(pageID));
+            return value == null ? null : ByteBuffer.wrap(value).getLong();
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * find an indexed page with nearly the same content, the pages added by the batch count as indexed
+     * @param fingerprint fingerprint of the content
+     * @param pageID page of the content, never returned
+     * @param batch batch committing the changes of the page
+     * @return ID of the closest page within MAX_DISTANCE, -1 if there is none
+     */
+    public synchronized int findDuplicate(long fingerprint, int pageID, WriteBatch batch) {
+        int closest = -1, closestDistance = MAX_DISTANCE + 1;
+        for (Map.Entry<Integer, Long> entry : uncommitted.getOrDefault(batch, new HashMap<>()).entrySet()) {
+            int distance = SimHash.distance(fingerprint, entry.getValue());
+            if (entry.getKey() != pageID && distance < closestDistance) {
+                closest = entry.getKey();
+                closestDistance = distance;
+            }
+        }
+        for (int band = 0; band < NUM_OF_BAND; band++) {
+            byte[] prefix = bandPrefix(band, fingerprint);
+            try (RocksIterator it = db.newIterator(bandHandle)) {
+                for (it.seek(prefix); it.isValid(); it.next()) {
+                    byte[] key = it.key();
+                    if (key[0] != prefix[0] || key[1] != prefix[1] || key[2] != prefix[2]) {
+                        break;
+                    }
+                    int candidate = Converter.byteArrayToId(key, 3);
+                    Long other = candidate == pageID ? null : getFingerprint(candidate);
+                    if (other != null && SimHash.distance(fingerprint, other) < closestDistance) {
+                        closest = candidate;
+                        closestDistance = SimHash.distance(fingerprint, other);
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * store the fingerprint of an indexed page, nothing is written until the batch is committed
+     * @param pageID page ID
+     * @param fingerprint fingerprint of its content
+     * @param batch batch committing the changes of the page
+     */
+    public synchronized void add(int pageID, long fingerprint, WriteBatch batch) {
+        uncommitted.computeIfAbsent(batch, b -> new HashMap<>()).put(pageID, fingerprint);
+        try {
+            batch.put(fingerprintHandle, Converter.idTobyteArray(pageID),
+                    ByteBuffer.allocate(8).putLong(fingerprint).array());
+            for (int band = 0; band < NUM_OF_BAND; band++) {
+                batch.put(bandHandle, bandKey(band, fingerprint, pageID), new byte[0]);
+            }
+            batch.delete(duplicateHandle, Converter.idTobyteArray(pageID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * remove the fingerprint of a page, nothing is written until the batch is committed
+     * @param pageID page ID
+     * @param batch batch committing the changes of the page
+     */
+    public synchronized void remove(int pageID, WriteBatch batch) {
+        if (uncommitted.containsKey(batch)) {
+            uncommitted.get(batch).remove(pageID);
+        }
+        Long fingerprint = getFingerprint(pageID);
+        try {
+            if (fingerprint != null) {
+                batch.delete(fingerprintHandle, Converter.idTobyteArray(pageID));
+                for (int band = 0; band < NUM_OF_BAND; band++) {
+                    batch.delete(bandHandle, bandKey(band, fingerprint, pageID));
+                }
+            }
+            batch.delete(duplicateHandle, Converter.idTobyteArray(pageID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * forget the fingerprints kept for a batch, call it once the batch is committed or failed
+     * @param batch the batch
+     */
+    public synchronized void release(WriteBatch batch) {
+        uncommitted.remove(batch);
+    }
+
+    /**
+     * record a page not indexed because it duplicates an indexed page
+     * @param pageID page ID of the duplicate
+     * @param canonicalPageID page ID of the indexed page
+     * @param batch batch committing the changes of the page
+     */
+    public void addAlias(int pageID, int canonicalPageID, WriteBatch batch) {
+        try {
+            batch.put(duplicateHandle, Converter.idTobyteArray(pageID), Converter.idTobyteArray(canonicalPageID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param pageID page ID
+     * @return ID of the indexed page the page duplicates, -1 if it is not a duplicate
+     */
+    public int getCanonicalPage(int pageID) {
+        try {
+            byte[] value = db.get(duplicateHandle, Converter.idTobyteArray(pageID));
+            return value == null ? -1 : Converter.byteArrayToId(value);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * show the pages recorded as duplicates
+     */
+    public static void main(String[] args) {
+        NearDuplicates nearDuplicates = getInstance();
+        PageProperty pageProperty = PageProperty.getInstance();
+        Indexer indexer = Indexer.getInstance();
+        try (RocksIterator it = nearDuplicates.db.newIterator(nearDuplicates.duplicateHandle)) {
+            for (it.seekToFirst(); it.isValid(); it.next()) {
+                System.out.println(indexer.searchURLByID(Converter.byteArrayToId(it.key())) + " duplicates "
+                        + pageProperty.getUrl(Converter.byteArrayToId(it.value())));
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package indexer;
 
 import org.rocksdb.*;
 import spider.WebInfoSeeker;
+import util.Converter;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
@@ -10,39 +11,27 @@ import java.util.*;
 public class PageProperty {
     private static final PageProperty INSTANCE = new PageProperty();
     private RocksDB pagePropDB;
-    private final List<ColumnFamilyHandle> handles = new Vector<>();
-    private int numOfPageFetched;
+    private List<ColumnFamilyHandle> handles;
 
     static public PageProperty getInstance() {
         return INSTANCE;
     }
 
     /**
-     * open db file
+     * get the column families of page properties
      */
     private PageProperty(){
-        String PATH = "database/pagePropDB";
-        try {
-            List<ColumnFamilyDescriptor> colFamily = new Vector<>();
-            colFamily.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
-            colFamily.add(new ColumnFamilyDescriptor("url".getBytes()));
-            colFamily.add(new ColumnFamilyDescriptor("lastDateOfModification".getBytes()));
-            colFamily.add(new ColumnFamilyDescriptor("size".getBytes()));
-            DBOptions options = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
-            pagePropDB = RocksDB.open(options, PATH, colFamily, handles);
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
-        numOfPageFetched = getNumOfPageInDb();
-    }
-
-    int getNumOfPageFetched() {
-        return numOfPageFetched;
+        Database database = Database.getInstance();
+        pagePropDB = database.getDB();
+        handles = Arrays.asList(database.getHandle(Database.Family.title), database.getHandle(Database.Family.url),
+                database.getHandle(Database.Family.lastDateOfModification), database.getHandle(Database.Family.size),
+                database.getHandle(Database.Family.etag), database.getHandle(Database.Family.contentHash),
+                database.getHandle(Database.Family.changeHistory));
     }
 
     public String getTitle(int pageID) {
         try {
-            byte[] url = pagePropDB.get(handles.get(0), String.valueOf(pageID).getBytes());
+            byte[] url = pagePropDB.get(handles.get(0), Converter.idTobyteArray(pageID));
             if (url == null) {
                 return null;
             }
@@ -54,11 +43,16 @@ public class PageProperty {
         }
     }
 
-    public void delEntry(int pageID){
-        byte[] key = String.valueOf(pageID).getBytes();
+    /**
+     * delete page info, nothing is written until the batch is committed
+     * @param pageID ID of the page
+     * @param batch batch committing the changes of the page
+     */
+    public void delEntry(int pageID, WriteBatch batch){
+        byte[] key = Converter.idTobyteArray(pageID);
         for(ColumnFamilyHandle h: handles){
             try {
-                pagePropDB.delete(h, key);
+                batch.delete(h, key);
             } catch (RocksDBException e) {
                 e.printStackTrace();
             }
@@ -67,7 +61,7 @@ public class PageProperty {
 
     public String getUrl(int pageID) {
         try {
-            byte[] url = pagePropDB.get(handles.get(1), String.valueOf(pageID).getBytes());
+            byte[] url = pagePropDB.get(handles.get(1), Converter.idTobyteArray(pageID));
             if (url == null) {
                 return null;
             }
@@ -81,7 +75,7 @@ public class PageProperty {
 
     public String getSize(int pageID) {
         try {
-            byte[] url = pagePropDB.get(handles.get(3), String.valueOf(pageID).getBytes());
+            byte[] url = pagePropDB.get(handles.get(3), Converter.idTobyteArray(pageID));
             if (url == null) {
                 return null;
             }
@@ -95,7 +89,7 @@ public class PageProperty {
 
     public String getLastModificationTime(int pageID) {
         try {
-            return new String(pagePropDB.get(handles.get(2), String.valueOf(pageID).getBytes()));
+            return new String(pagePropDB.get(handles.get(2), Converter.idTobyteArray(pageID)));
         } catch (RocksDBException e) {
             e.printStackTrace();
             System.out.println("this should not happened");
@@ -104,30 +98,122 @@ public class PageProperty {
     }
 
     /**
-     * store page info into database
      * @param pageID ID of the page
-     * @param url link of the page
+     * @return ETag of the page, null if there is none
+     */
+    public String getEtag(int pageID) {
+        try {
+            byte[] etag = pagePropDB.get(handles.get(4), Converter.idTobyteArray(pageID));
+            return etag == null ? null : new String(etag);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @param pageID ID of the page
+     * @return hash of the content of the page when it was indexed, null for a page indexed before
+     * the hash was stored
+     */
+    public byte[] getContentHash(int pageID) {
+        try {
+            return pagePropDB.get(handles.get(5), Converter.idTobyteArray(pageID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @param pageID ID of the page
+     * @return how often the page changed when it was fetched again, ChangeHistory.NONE if it was never
+     * fetched since the history is recorded
+     */
+    public ChangeHistory getChangeHistory(int pageID) {
+        try {
+            byte[] history = pagePropDB.get(handles.get(6), Converter.idTobyteArray(pageID));
+            return history == null ? ChangeHistory.NONE : ChangeHistory.fromBytes(history);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return ChangeHistory.NONE;
+        }
+    }
+
+    /**
+     * record a fetch of the page in its change history, nothing is written until the batch is committed
+     * @param pageID ID of the page
+     * @param changed whether the content of the page changed since the last fetch
+     * @param batch batch committing the changes of the page
+     */
+    public void recordCheck(int pageID, boolean changed, WriteBatch batch) {
+        try {
+            batch.put(handles.get(6), Converter.idTobyteArray(pageID),
+                    getChangeHistory(pageID).check(System.currentTimeMillis(), changed).toBytes());
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * record that the page is queued to be fetched again, nothing is written until the batch is committed
+     * @param pageID ID of the page
+     * @param batch batch committing the queued pages
+     */
+    public void recordSchedule(int pageID, WriteBatch batch) {
+        try {
+            batch.put(handles.get(6), Converter.idTobyteArray(pageID),
+                    getChangeHistory(pageID).schedule(System.currentTimeMillis()).toBytes());
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * store the validators and the content hash of a page fetched again without change,
+     * so the next conditional GET use the latest validators
+     * @param pageID ID of the page
+     * @param seeker the fetched page
+     * @param batch batch committing the changes of the page
      */
-    public void store(int pageID, String url){
+    public void storeValidators(int pageID, WebInfoSeeker seeker, WriteBatch batch) {
+        byte[] key = Converter.idTobyteArray(pageID);
+        try {
+            batch.put(handles.get(2), key, seeker.getLastModificationTime().getBytes());
+            if (seeker.getEtag() == null) {
+                batch.delete(handles.get(4), key);
+            } else {
+                batch.put(handles.get(4), key, seeker.getEtag().getBytes());
+            }
+            batch.put(handles.get(5), key, seeker.getContentHash());
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
 
-        WebInfoSeeker seeker = new WebInfoSeeker(url);
+    /**
+     * store page info into database, nothing is written until the batch is committed
+     * @param pageID ID of the page
+     * @param seeker the fetched page
+     * @param batch batch committing the changes of the page
+     */
+    public void store(int pageID, WebInfoSeeker seeker, WriteBatch batch){
         try {
-            pagePropDB.put(handles.get(0), Integer.toString(pageID).getBytes(), seeker.getTitle().getBytes());
-            pagePropDB.put(handles.get(1), Integer.toString(pageID).getBytes(), url.getBytes());
-            pagePropDB.put(handles.get(2), Integer.toString(pageID).getBytes(), seeker.getLastModificationTime().getBytes());
-            pagePropDB.put(handles.get(3), Integer.toString(pageID).getBytes(), seeker.getPageSize().getBytes());
-            numOfPageFetched++;
+            batch.put(handles.get(0), Converter.idTobyteArray(pageID), seeker.getTitle().getBytes());
+            batch.put(handles.get(1), Converter.idTobyteArray(pageID), seeker.getUrl().getBytes());
+            batch.put(handles.get(3), Converter.idTobyteArray(pageID), seeker.getPageSize().getBytes());
         } catch (RocksDBException e) {
             System.out.println("this should not happened");
             e.printStackTrace();
         }
+        storeValidators(pageID, seeker, batch);
     }
 
     private void printAll() throws RocksDBException {
         try (PrintWriter writer = new PrintWriter("allPage.txt")) {
-            RocksIterator iterator = pagePropDB.newIterator();
+            RocksIterator iterator = pagePropDB.newIterator(handles.get(0));
             for(iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
-                writer.print(new String(iterator.key())+": ");
+                writer.print(Converter.byteArrayToId(iterator.key())+": ");
                 writer.print(new String(pagePropDB.get(handles.get(0), iterator.key())));
                 writer.print("\t");
                 writer.print(new String(pagePropDB.get(handles.get(1), iterator.key())));
@@ -141,24 +227,15 @@ public class PageProperty {
 
     }
 
-    private int getNumOfPageInDb() {
-        int num = 0;
-        RocksIterator iterator = pagePropDB.newIterator();
-        for(iterator.seekToFirst(); iterator.isValid(); iterator.next()){
-            num++;
-        }
-        return num;
-    }
-
     /**
      * get all pageID in the database
-     * @return list of pageID
+     * @return list of pageID in increasing order
      */
     public List<Integer> getAllPageID() {
         List<Integer> pageIDs = new LinkedList<>();
-        RocksIterator iterator = pagePropDB.newIterator();
+        RocksIterator iterator = pagePropDB.newIterator(handles.get(0));
         for(iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
-            int ID = Integer.parseInt(new String(iterator.key()));
+            int ID = Converter.byteArrayToId(iterator.key());
             pageIDs.add(ID);
         }
         return pageIDs;
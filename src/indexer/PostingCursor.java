@@ -0,0 +1,197 @@
+package indexer;
+
+import util.VarInt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * forward only cursor over the frequency stream of a posting list, the pages are returned in
+ * increasing pageID. advance use the skip table of the block format (version 4) to jump over the
+ * blocks that end before the target, so a long posting list intersected with a short one is only
+ * decoded around the pages of the short one.
+ * the older split formats (version 2, 3) are read as a single block, a posting list in the old
+ * combined or text format is converted to the split format first
+ */
+class PostingCursor {
+    static final int NO_MORE_PAGES = Integer.MAX_VALUE;
+
+    private final ByteBuffer in;
+    private final boolean hasImpact;
+    private final int numOfPage;
+    private final int blockSize;
+    /**
+     * skip table: last pageID, start of the block in the frequency stream and in the position stream
+     */
+    private final int[] lastPageIDs;
+    private final int[] blockStarts;
+    private final int[] positionStarts;
+    /**
+     * position stream of a posting list converted from an old format, null otherwise
+     */
+    private final byte[] ownPositionRecord;
+
+    private int block = -1;
+    private int numOfRemaining = 0;
+    private int pageID = -1;
+    private int frequency = 0;
+    private int impact = 0;
+    private ByteBuffer positionIn;
+    /**
+     * number of position to skip in positionIn before the positions of the current page
+     */
+    private int positionSkip = 0;
+    private int[] positions;
+
+    /**
+     * @param record frequency stream of a posting list, or a posting list in an old format
+     */
+    PostingCursor(byte[] record) {
+        if (!PostingListHandler.isSplit(record)) {
+            PostingListHandler postingList = new PostingListHandler(record);
+            record = postingList.toFrequencyBytes();
+            ownPositionRecord = postingList.toPositionBytes();
+        } else {
+            ownPositionRecord = null;
+        }
+        hasImpact = PostingListHandler.hasImpact(record);
+        in = ByteBuffer.wrap(record);
+        if (in.get() != PostingListHandler.BLOCK_VERSION) {
+            numOfPage = VarInt.read(in);
+            blockSize = Math.max(1, numOfPage);
+            lastPageIDs = new int[]{NO_MORE_PAGES};
+            blockStarts = new int[]{in.position()};
+            positionStarts = new int[]{0};
+            return;
+        }
+        in.get();
+        numOfPage = VarInt.read(in);
+        blockSize = PostingListHandler.BLOCK_SIZE;
+        int numOfBlock = VarInt.read(in);
+        lastPageIDs = new int[numOfBlock];
+        blockStarts = new int[numOfBlock];
+        positionStarts = new int[numOfBlock];
+        int lastPageID = 0, blockStart = 0, positionStart = 0;
+        for (int b = 0; b < numOfBlock; b++) {
+            lastPageID += VarInt.read(in);
+            lastPageIDs[b] = lastPageID;
+            blockStarts[b] = blockStart;
+            blockStart += VarInt.read(in);
+            positionStarts[b] = positionStart;
+            positionStart += VarInt.read(in);
+        }
+        for (int b = 0; b < numOfBlock; b++) {
+            blockStarts[b] += in.position();
+        }
+    }
+
+    /**
+     * @return number of page in the posting list, including the deleted one
+     */
+    int documentFrequency() {
+        return numOfPage;
+    }
+
+    int pageID() {
+        return pageID;
+    }
+
+    int frequency() {
+        return frequency;
+    }
+
+    /**
+     * @return impact of the current page, 0 if not quantized
+     */
+    int impact() {
+        return impact;
+    }
+
+    private void enterBlock(int newBlock) {
+        block = newBlock;
+        numOfRemaining = Math.min(blockSize, numOfPage - newBlock * blockSize);
+        in.position(blockStarts[newBlock]);
+        pageID = newBlock == 0 ? 0 : lastPageIDs[newBlock - 1];
+        frequency = 0;
+        positionSkip = 0;
+        positions = null;
+        if (positionIn != null) {
+            positionIn.position(positionStarts[newBlock]);
+        }
+    }
+
+    /**
+     * move to the next page
+     * @return pageID, NO_MORE_PAGES at the end of the posting list
+     */
+    int nextPage() {
+        if (pageID == NO_MORE_PAGES) {
+            return pageID;
+        }
+        if (numOfRemaining == 0) {
+            if (block + 1 >= lastPageIDs.length || (block + 1) * blockSize >= numOfPage) {
+                return pageID = NO_MORE_PAGES;
+            }
+            enterBlock(block + 1);
+        }
+        if (positions == null) {
+            positionSkip += frequency;
+        }
+        positions = null;
+        pageID += VarInt.read(in);
+        frequency = VarInt.read(in);
+        impact = hasImpact ? in.get() & 0xFF : 0;
+        numOfRemaining--;
+        return pageID;
+    }
+
+    /**
+     * move to the first page not before the target, the blocks ending before the target are skipped
+     * without being decoded. the cursor never move backward
+     * @param target pageID
+     * @return pageID of the new current page, NO_MORE_PAGES if there is none
+     */
+    int advance(int target) {
+        if (pageID >= target) {
+            return pageID;
+        }
+        if (lastPageIDs.length == 0) {
+            return pageID = NO_MORE_PAGES;
+        }
+        int newBlock = Math.max(block, 0);
+        while (newBlock < lastPageIDs.length - 1 && lastPageIDs[newBlock] < target) {
+            newBlock++;
+        }
+        if (newBlock > block) {
+            enterBlock(newBlock);
+        }
+        while (pageID < target) {
+            nextPage();
+        }
+        return pageID;
+    }
+
+    /**
+     * get the positions of the current page
+     * @param positionRecord position stream of the posting list, ignored if the posting list was
+     * converted from an old format
+     * @return sorted positions
+     */
+    int[] positions(byte[] positionRecord) {
+        if (positions != null) {
+            return positions;
+        }
+        if (positionIn == null) {
+            positionIn = ByteBuffer.wrap(ownPositionRecord != null ? ownPositionRecord : positionRecord);
+            positionIn.position(positionStarts[block]);
+        }
+        VarInt.skip(positionIn, positionSkip);
+        positionSkip = 0;
+        positions = new int[frequency];
+        int pos = 0;
+        for (int i = 0; i < frequency; i++) {
+            pos += VarInt.read(positionIn);
+            positions[i] = pos;
+        }
+        return positions;
+    }
+}
@@ -1,24 +1,124 @@
 package indexer;
 
+import util.VarInt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
- * the posting list of inverted index has the following format
+ * the posting list of inverted index is stored as two streams (version 2) so that a keyword query
+ * never read the positions, which are only needed by phrase queries:
+ * frequency stream: version, numOfPage, {pageID delta, frequency} ...
+ * position stream: {{position delta} of the first page}, {{position delta} of the second page} ...
+ * every number except the version byte is a varInt, pageIDs are sorted so that only the
+ * difference to the previous pageID is stored, the same apply to the positions inside a page.
+ * the position stream has no header, the number of position of each page is its frequency
+ *
+ * a frequency stream of version 3 also store the impact of each page, a byte after the frequency:
+ * version, numOfPage, {pageID delta, frequency, impact} ...
+ * the impact is the term weight quantized by the scale of the segment (see Segment.getImpactScale),
+ * 1 to 255, 0 mean the page is not quantized yet
+ *
+ * a frequency stream of version 4 cut the pages into blocks of BLOCK_SIZE pages led by a skip table,
+ * so that a cursor can jump to the block that may contain a page (see PostingCursor):
+ * version, flags, numOfPage, numOfBlock, {last pageID delta, block length, position length} ..., block ...
+ * block: {pageID delta, frequency, impact if flags & HAS_IMPACT} ...
+ * the last pageID of a block is stored as the difference to the last pageID of the previous block,
+ * and so is the first pageID of the next block. the lengths are in byte, the position length of a
+ * block is the length of the positions of its pages in the position stream.
+ * version 2 and 3 are the same without blocks and flags and are still read
+ *
+ * the older binary format (version 1) kept both streams together:
+ * version, numOfPage, {pageID delta, frequency, {position delta}} ...
+ * a posting list of the old single index may be made of several chunks in the same format that
+ * were appended by the merge operator of wordFreqdb: chunk, delimiter, chunk, delimiter, chunk ...
+ * the chunks are folded when the record is read, a page appear in at most one chunk
+ *
+ * the old text format is still understood so that a database not yet migrated can be read:
  * pageID1:frequency:position1,position2,... pageID2:frequency2:position1,position2....
  */
 class PostingListHandler {
+    static final byte VERSION = 1;
+    static final byte SPLIT_VERSION = 2;
+    static final byte IMPACT_VERSION = 3;
+    static final byte BLOCK_VERSION = 4;
+    static final int HAS_IMPACT = 1;
+    static final int BLOCK_SIZE = 128;
+    static final int MAX_IMPACT = 255;
     /**
-     * pageID -> frequency
+     * separator put by the StringAppendOperator of the old wordFreqdb between two chunks
      */
-    private HashMap<Integer, Integer> frequencyRecord = new HashMap<>();
+    static final char CHUNK_DELIMITER = ',';
+
     /**
-     * pageID -> {position}
+     * pageID -> {position}, sorted by pageID
      */
-    private HashMap<Integer, LinkedList<Integer>> positionsRecord = new HashMap<>();
+    private final TreeMap<Integer, int[]> positionsRecord = new TreeMap<>();
+    /**
+     * pageID -> impact, only the quantized pages
+     */
+    private final HashMap<Integer, Integer> impactRecord = new HashMap<>();
 
+    /**
+     * read a posting list in the old text format
+     * @param invertedIndex text posting list
+     */
     PostingListHandler(String invertedIndex) {
+        readText(invertedIndex);
+    }
+
+    /**
+     * a posting list of a single page
+     * @param pageID page ID
+     * @param positions sorted positions of the word in that page
+     */
+    PostingListHandler(int pageID, int[] positions) {
+        positionsRecord.put(pageID, positions);
+    }
+
+    /**
+     * read a posting list stored in database, null is treated as an empty posting list
+     * @param record raw posting list stored in database, not in the split format
+     */
+    PostingListHandler(byte[] record) {
+        this(record, null);
+    }
+
+    /**
+     * read a posting list stored in database, null is treated as an empty posting list
+     * @param record raw posting list stored in database
+     * @param positionRecord position stream of the posting list, only used by the split format
+     */
+    PostingListHandler(byte[] record, byte[] positionRecord) {
+        if (isSplit(record)) {
+            PostingCursor cursor = new PostingCursor(record);
+            while (cursor.nextPage() != PostingCursor.NO_MORE_PAGES) {
+                positionsRecord.put(cursor.pageID(), cursor.positions(positionRecord));
+                setImpact(cursor.pageID(), cursor.impact());
+            }
+            return;
+        }
+        if (!isBinary(record)) {
+            readText(record == null ? "" : new String(record));
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(record);
+        while (in.hasRemaining()) {
+            int numOfPage = startChunk(in);
+            int pageID = 0;
+            for (int i = 0; i < numOfPage; i++) {
+                pageID += VarInt.read(in);
+                positionsRecord.put(pageID, readPositions(in, VarInt.read(in)));
+            }
+        }
+    }
+
+    private void readText(String invertedIndex) {
         String[] details = invertedIndex.split(" ");
         for (String detail : details) {
             if (detail.equals("")) {
@@ -26,29 +126,212 @@ class PostingListHandler {
             }
             String[] content = detail.split(":");
             int pageID = Integer.parseInt(content[0]);
-            frequencyRecord.put(pageID, Integer.valueOf(content[1]));
-            positionsRecord.put(pageID, new LinkedList<>());
             String[] listOfPosition = content[2].split(",");
-            for (String pos : listOfPosition) {
-                positionsRecord.get(pageID).addLast(Integer.valueOf(pos));
+            int[] positions = new int[listOfPosition.length];
+            for (int i = 0; i < listOfPosition.length; i++) {
+                positions[i] = Integer.parseInt(listOfPosition[i]);
             }
+            positionsRecord.put(pageID, positions);
         }
     }
 
+    /**
+     * move over the delimiter (if any) and the version of a chunk
+     * @param in buffer placed at the beginning of a chunk or at a delimiter
+     * @return number of page in the chunk
+     */
+    private static int startChunk(ByteBuffer in) {
+        if (in.get() != VERSION) {
+            in.get();
+        }
+        return VarInt.read(in);
+    }
+
+    private static int[] readPositions(ByteBuffer in, int frequency) {
+        int[] positions = new int[frequency];
+        int pos = 0;
+        for (int j = 0; j < frequency; j++) {
+            pos += VarInt.read(in);
+            positions[j] = pos;
+        }
+        return positions;
+    }
+
+    /**
+     * check if a record is stored in a binary format
+     * @param record raw posting list stored in database
+     * @return true if binary, false if text or empty
+     */
+    static boolean isBinary(byte[] record) {
+        return record != null && record.length > 0 && (record[0] == VERSION || isSplit(record));
+    }
+
+    /**
+     * check if a record is the frequency stream of the split format
+     * @param record raw posting list stored in database
+     * @return true if the positions are stored separately
+     */
+    static boolean isSplit(byte[] record) {
+        return record != null && record.length > 0 &&
+                (record[0] == SPLIT_VERSION || record[0] == IMPACT_VERSION || record[0] == BLOCK_VERSION);
+    }
+
+    /**
+     * check if a record is a frequency stream with impacts
+     * @param record raw posting list stored in database
+     * @return true if version 3 or version 4 with impacts
+     */
+    static boolean hasImpact(byte[] record) {
+        return record != null && record.length > 0 && (record[0] == IMPACT_VERSION ||
+                (record[0] == BLOCK_VERSION && (record[1] & HAS_IMPACT) != 0));
+    }
+
+    /**
+     * get df of the posting list, only the header of each chunk is decoded
+     * @param record raw posting list stored in database
+     * @return number of page in the posting list
+     */
+    static int readDocumentFrequency(byte[] record) {
+        if (isSplit(record)) {
+            int offset = record[0] == BLOCK_VERSION ? 2 : 1;
+            return VarInt.read(ByteBuffer.wrap(record, offset, record.length - offset));
+        }
+        if (!isBinary(record)) {
+            return new PostingListHandler(record).positionsRecord.size();
+        }
+        ByteBuffer in = ByteBuffer.wrap(record);
+        int df = 0;
+        while (in.hasRemaining()) {
+            int numOfPage = startChunk(in);
+            df += numOfPage;
+            for (int i = 0; i < numOfPage; i++) {
+                VarInt.skip(in, 1);
+                VarInt.skip(in, VarInt.read(in));
+            }
+        }
+        return df;
+    }
+
+    /**
+     * get relation: pageID -> frequency, positions are skipped instead of decoded
+     * @param record raw posting list stored in database
+     * @return a hashMap
+     */
+    static HashMap<Integer, Integer> readFrequencyRecord(byte[] record) {
+        if (!isBinary(record)) {
+            return new PostingListHandler(record).getFrequencyRecord();
+        }
+        ByteBuffer in = ByteBuffer.wrap(record);
+        HashMap<Integer, Integer> frequencyRecord = new HashMap<>();
+        if (isSplit(record)) {
+            PostingCursor cursor = new PostingCursor(record);
+            while (cursor.nextPage() != PostingCursor.NO_MORE_PAGES) {
+                frequencyRecord.put(cursor.pageID(), cursor.frequency());
+            }
+            return frequencyRecord;
+        }
+        while (in.hasRemaining()) {
+            int numOfPage = startChunk(in);
+            int pageID = 0;
+            for (int i = 0; i < numOfPage; i++) {
+                pageID += VarInt.read(in);
+                int frequency = VarInt.read(in);
+                VarInt.skip(in, frequency);
+                frequencyRecord.put(pageID, frequency);
+            }
+        }
+        return frequencyRecord;
+    }
+
+    /**
+     * get the positions of a page, only the block of that page is decoded
+     * @param record raw posting list stored in database
+     * @param positionRecord position stream of the posting list, only used by the split format
+     * @param pageID page ID
+     * @return sorted positions, null if the page is not in the posting list
+     */
+    static int[] readPositions(byte[] record, byte[] positionRecord, int pageID) {
+        if (!isSplit(record)) {
+            return readPositions(record, pageID);
+        }
+        PostingCursor cursor = new PostingCursor(record);
+        return cursor.advance(pageID) == pageID ? cursor.positions(positionRecord) : null;
+    }
+
+    /**
+     * get the positions of a page in a posting list not in the split format
+     * @param record raw posting list stored in database
+     * @param pageID page ID
+     * @return sorted positions, null if the page is not in the posting list
+     */
+    static int[] readPositions(byte[] record, int pageID) {
+        if (!isBinary(record)) {
+            return new PostingListHandler(record).getPositions(pageID);
+        }
+        ByteBuffer in = ByteBuffer.wrap(record);
+        while (in.hasRemaining()) {
+            int numOfPage = startChunk(in);
+            int currentID = 0;
+            for (int i = 0; i < numOfPage; i++) {
+                currentID += VarInt.read(in);
+                int frequency = VarInt.read(in);
+                if (currentID == pageID) {
+                    return readPositions(in, frequency);
+                }
+                VarInt.skip(in, frequency);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * get relation: pageID -> impact, frequencies and positions are not kept
+     * @param record frequency stream
+     * @return a hashMap, impact is 0 for the pages not quantized
+     */
+    static HashMap<Integer, Integer> readImpactRecord(byte[] record) {
+        if (!hasImpact(record)) {
+            HashMap<Integer, Integer> impactRecord = readFrequencyRecord(record);
+            impactRecord.replaceAll((pageID, frequency) -> 0);
+            return impactRecord;
+        }
+        PostingCursor cursor = new PostingCursor(record);
+        HashMap<Integer, Integer> impactRecord = new HashMap<>(cursor.documentFrequency() * 2);
+        while (cursor.nextPage() != PostingCursor.NO_MORE_PAGES) {
+            impactRecord.put(cursor.pageID(), cursor.impact());
+        }
+        return impactRecord;
+    }
+
+    /**
+     * quantize a term weight
+     * @param weight term weight
+     * @param scale weight of one unit of impact, must be positive
+     * @return impact from 1 to MAX_IMPACT
+     */
+    static int quantize(double weight, double scale) {
+        return (int) Math.max(1, Math.min(MAX_IMPACT, Math.round(weight / scale)));
+    }
+
     /**
      * get relation: pageID -> frequency
      * @return a hashMap
      */
     HashMap<Integer, Integer> getFrequencyRecord() {
+        HashMap<Integer, Integer> frequencyRecord = new HashMap<>(positionsRecord.size() * 2);
+        for (Map.Entry<Integer, int[]> entry : positionsRecord.entrySet()) {
+            frequencyRecord.put(entry.getKey(), entry.getValue().length);
+        }
         return frequencyRecord;
     }
 
     /**
-     * get relation: pageID -> {position}
-     * @return a hashMap
+     * get the positions of a word in a page
+     * @param pageID page ID
+     * @return sorted positions, null if the page is not in the posting list
      */
-    HashMap<Integer, LinkedList<Integer>> getPositionsRecord() {
-        return positionsRecord;
+    int[] getPositions(int pageID) {
+        return positionsRecord.get(pageID);
     }
 
     /**
@@ -57,42 +340,152 @@ class PostingListHandler {
      * @return true if the posting list become empty after remove a page
      */
     boolean removeRecord(int pageID){
-        frequencyRecord.remove(pageID);
         positionsRecord.remove(pageID);
-        return (frequencyRecord.size() == 0);
+        impactRecord.remove(pageID);
+        return (positionsRecord.size() == 0);
+    }
+
+    /**
+     * add all pages of another posting list, a page already present is replaced
+     * @param other posting list
+     */
+    void addAll(PostingListHandler other) {
+        for (int pageID : other.positionsRecord.keySet()) {
+            impactRecord.remove(pageID);
+        }
+        positionsRecord.putAll(other.positionsRecord);
+        impactRecord.putAll(other.impactRecord);
+    }
+
+    /**
+     * remove all pages not in a set
+     * @param pageIDs pages to keep
+     */
+    void retain(BitSet pageIDs) {
+        positionsRecord.keySet().removeIf(pageID -> !pageIDs.get(pageID));
+        impactRecord.keySet().removeIf(pageID -> !pageIDs.get(pageID));
     }
 
     /**
-     * add a word
      * @param pageID page ID
-     * @param pos position
-     * @return current term frequency of the page after adding that word
+     * @param impact quantized term weight, 1 to MAX_IMPACT
+     */
+    void setImpact(int pageID, int impact) {
+        if (impact > 0) {
+            impactRecord.put(pageID, impact);
+        }
+    }
+
+    /**
+     * convert the impacts to another scale, all impacts are dropped if the new scale is 0
+     * @param fromScale current scale of the impacts
+     * @param toScale new scale
+     */
+    void rescaleImpacts(double fromScale, double toScale) {
+        if (toScale == 0 || fromScale == 0) {
+            impactRecord.clear();
+        } else if (fromScale != toScale) {
+            impactRecord.replaceAll((pageID, impact) -> quantize(impact * fromScale, toScale));
+        }
+    }
+
+    boolean isEmpty() {
+        return positionsRecord.isEmpty();
+    }
+
+    /**
+     * convert the posting list to the old binary format (version 1), all chunks are folded into one
+     * @return bytes to be stored in the old wordFreqdb
+     */
+    byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        VarInt.write(out, positionsRecord.size());
+        int prevPageID = 0;
+        for (Map.Entry<Integer, int[]> entry : positionsRecord.entrySet()) {
+            VarInt.write(out, entry.getKey() - prevPageID);
+            prevPageID = entry.getKey();
+            int[] positions = entry.getValue();
+            VarInt.write(out, positions.length);
+            int prevPos = 0;
+            for (int pos : positions) {
+                VarInt.write(out, pos - prevPos);
+                prevPos = pos;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return frequency stream of the block format, with impacts if any page is quantized
+     */
+    byte[] toFrequencyBytes() {
+        boolean hasImpact = !impactRecord.isEmpty();
+        ByteArrayOutputStream skipTable = new ByteArrayOutputStream();
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int numOfBlock = 0, numInBlock = 0, blockStart = 0, positionLength = 0;
+        int prevPageID = 0, prevLastPageID = 0;
+        for (Map.Entry<Integer, int[]> entry : positionsRecord.entrySet()) {
+            VarInt.write(blocks, entry.getKey() - prevPageID);
+            prevPageID = entry.getKey();
+            VarInt.write(blocks, entry.getValue().length);
+            if (hasImpact) {
+                blocks.write(impactRecord.getOrDefault(entry.getKey(), 0));
+            }
+            int prevPos = 0;
+            for (int pos : entry.getValue()) {
+                positionLength += VarInt.size(pos - prevPos);
+                prevPos = pos;
+            }
+            if (++numInBlock == BLOCK_SIZE || numOfBlock * BLOCK_SIZE + numInBlock == positionsRecord.size()) {
+                VarInt.write(skipTable, prevPageID - prevLastPageID);
+                VarInt.write(skipTable, blocks.size() - blockStart);
+                VarInt.write(skipTable, positionLength);
+                prevLastPageID = prevPageID;
+                blockStart = blocks.size();
+                positionLength = 0;
+                numInBlock = 0;
+                numOfBlock++;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BLOCK_VERSION);
+        out.write(hasImpact ? HAS_IMPACT : 0);
+        VarInt.write(out, positionsRecord.size());
+        VarInt.write(out, numOfBlock);
+        out.write(skipTable.toByteArray(), 0, skipTable.size());
+        out.write(blocks.toByteArray(), 0, blocks.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * @return position stream of the split format
      */
-    int addWord(int pageID, int pos) {
-        if (frequencyRecord.containsKey(pageID)) {
-            frequencyRecord.replace(pageID, frequencyRecord.get(pageID) + 1);
-        } else {
-            frequencyRecord.put(pageID, 1);
-            positionsRecord.put(pageID, new LinkedList<>());
+    byte[] toPositionBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int[] positions : positionsRecord.values()) {
+            int prevPos = 0;
+            for (int pos : positions) {
+                VarInt.write(out, pos - prevPos);
+                prevPos = pos;
+            }
         }
-        positionsRecord.get(pageID).addLast(pos);
-        return positionsRecord.get(pageID).size();
+        return out.toByteArray();
     }
 
     /**
-     * convert the two hashMap back to a posting list
+     * convert the posting list back to the text format
      * @return a String representation of posting list
      */
     public String toString(){
         StringBuilder result = new StringBuilder();
-        for (Map.Entry<Integer, Integer> entry : frequencyRecord.entrySet()) {
-            int pageID = entry.getKey();
-            int frequency = entry.getValue();
-            result.append(pageID);
+        for (Map.Entry<Integer, int[]> entry : positionsRecord.entrySet()) {
+            int[] positions = entry.getValue();
+            result.append(entry.getKey());
             result.append(":");
-            result.append(frequency);
+            result.append(positions.length);
             result.append(":");
-            for (int pos : positionsRecord.get(pageID)) {
+            for (int pos : positions) {
                 result.append(pos);
                 result.append(",");
             }
@@ -107,21 +500,64 @@ class PostingListHandler {
 
     public static void main(String[] args) {
         System.out.println("test case 1");
-        PostingListHandler reader = new PostingListHandler("");
-        System.out.println(reader.toString());
-        reader.addWord(20, 6);
-        System.out.println(reader.toString());
-        reader.addWord(25, 6);
-        System.out.println(reader.toString());
-        reader.addWord(25, 20);
-        System.out.println(reader.toString());
-
-        System.out.println("\ntest case 2");
         PostingListHandler temp = new PostingListHandler("20:2:5,6 25:2:6,20");
         System.out.println(temp.toString());
         temp.removeRecord(22);
         System.out.println(temp.toString());
         temp.removeRecord(25);
         System.out.println(temp.toString());
+
+        System.out.println("\ntest case 2");
+        byte[] record = new PostingListHandler("20:2:5,6 25:2:6,20 300:1:7").toBytes();
+        System.out.println(new PostingListHandler(record).toString());
+        System.out.println(readDocumentFrequency(record));
+        System.out.println(readFrequencyRecord(record));
+        System.out.println(Arrays.toString(readPositions(record, 25)));
+        System.out.println(Arrays.toString(readPositions(record, 21)));
+
+        System.out.println("\ntest case 3");
+        byte[] chunk = new PostingListHandler(7, new int[]{3, 9, 130}).toBytes();
+        byte[] appended = Arrays.copyOf(record, record.length + 1 + chunk.length);
+        appended[record.length] = (byte) CHUNK_DELIMITER;
+        System.arraycopy(chunk, 0, appended, record.length + 1, chunk.length);
+        System.out.println(new PostingListHandler(appended).toString());
+        System.out.println(readDocumentFrequency(appended));
+        System.out.println(readFrequencyRecord(appended));
+        System.out.println(Arrays.toString(readPositions(appended, 7)));
+
+        System.out.println("\ntest case 4");
+        PostingListHandler split = new PostingListHandler(record);
+        byte[] frequencies = split.toFrequencyBytes();
+        byte[] positions = split.toPositionBytes();
+        System.out.println(new PostingListHandler(frequencies, positions).toString());
+        System.out.println(readDocumentFrequency(frequencies));
+        System.out.println(readFrequencyRecord(frequencies));
+        System.out.println(Arrays.toString(readPositions(frequencies, positions, 25)));
+        System.out.println(Arrays.toString(readPositions(frequencies, positions, 300)));
+        System.out.println(Arrays.toString(readPositions(frequencies, positions, 21)));
+
+        System.out.println("\ntest case 5");
+        split.setImpact(25, quantize(1.5, 0.01));
+        split.setImpact(300, quantize(0.001, 0.01));
+        frequencies = split.toFrequencyBytes();
+        System.out.println(readImpactRecord(frequencies));
+        System.out.println(readFrequencyRecord(frequencies));
+        System.out.println(Arrays.toString(readPositions(frequencies, positions, 300)));
+        split.rescaleImpacts(0.01, 0.02);
+        System.out.println(readImpactRecord(split.toFrequencyBytes()));
+
+        System.out.println("\ntest case 6");
+        PostingListHandler large = new PostingListHandler("");
+        for (int pageID = 3; pageID < 3000; pageID += 3) {
+            large.addAll(new PostingListHandler(pageID, new int[]{pageID % 7, pageID % 7 + 10}));
+        }
+        frequencies = large.toFrequencyBytes();
+        positions = large.toPositionBytes();
+        PostingCursor cursor = new PostingCursor(frequencies);
+        System.out.println(cursor.documentFrequency() + " " + cursor.advance(1000) + " " + cursor.advance(1000) + " " +
+                Arrays.toString(cursor.positions(positions)) + " " + cursor.advance(2999) + " " + cursor.nextPage());
+        System.out.println(Arrays.toString(readPositions(frequencies, positions, 2001)) + " " +
+                Arrays.toString(readPositions(frequencies, positions, 2002)));
+        System.out.println(new PostingListHandler(frequencies, positions).toString().equals(large.toString()));
     }
 }
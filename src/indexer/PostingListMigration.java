@@ -0,0 +1,73 @@
+package indexer;
+
+import org.rocksdb.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
+/**
+ * one-shot migration of wordFreqdb from the text posting list format to the binary format,
+ * a report comparing the size before and after is printed and saved in postingListMigration.txt
+ * run it with the search engine stopped, records already in binary format are left untouched
+ */
+class PostingListMigration {
+    private static final String PATH = "database/wordFreqdb";
+
+    private static long sizeOnDisk(String path) {
+        long size = 0;
+        File[] files = new File(path).listFiles();
+        if (files == null) {
+            return 0;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(".sst") || file.getName().endsWith(".log")) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    public static void main(String[] args) throws RocksDBException {
+        long diskBefore = sizeOnDisk(PATH);
+        long textBytes = 0, binaryBytes = 0;
+        int numOfList = 0, numOfMigrated = 0;
+
+        try (Options options = new Options().setCreateIfMissing(true)
+                .setMergeOperator(new StringAppendOperator(PostingListHandler.CHUNK_DELIMITER));
+             RocksDB wordFreqDb = RocksDB.open(options, PATH);
+             WriteBatch batch = new WriteBatch();
+             RocksIterator iter = wordFreqDb.newIterator()) {
+            for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                numOfList++;
+                byte[] record = iter.value();
+                if (PostingListHandler.isBinary(record)) {
+                    binaryBytes += record.length;
+                    continue;
+                }
+                byte[] converted = new PostingListHandler(record).toBytes();
+                textBytes += record.length;
+                binaryBytes += converted.length;
+                batch.put(iter.key(), converted);
+                numOfMigrated++;
+            }
+            try (WriteOptions writeOptions = new WriteOptions().setSync(true)) {
+                wordFreqDb.write(writeOptions, batch);
+            }
+            wordFreqDb.compactRange();
+        }
+        long diskAfter = sizeOnDisk(PATH);
+
+        try (PrintWriter writer = new PrintWriter("postingListMigration.txt")) {
+            String report = "posting list: " + numOfList + ", migrated: " + numOfMigrated + "\n" +
+                    "text value size: " + textBytes + " bytes\n" +
+                    "binary value size: " + binaryBytes + " bytes\n" +
+                    "wordFreqdb on disk before: " + diskBefore + " bytes\n" +
+                    "wordFreqdb on disk after: " + diskAfter + " bytes";
+            System.out.println(report);
+            writer.println(report);
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+}
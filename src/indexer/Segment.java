@@ -0,0 +1,142 @@
+package indexer;
+
+import util.Converter;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * an immutable part of the inverted index
+ * a segment own a posting list (frequency and position streams) for each word of the pages indexed into it and a bitset of
+ * pageID telling which of those pages are still live. deleting a page never touch the posting
+ * list, it produce a new segment object with the page cleared from the bitset
+ *
+ * newly indexed pages are kept in small in memory segments until they are flushed into
+ * the database, where the posting lists of a segment are stored under (segmentID, wordID)
+ */
+class Segment {
+    /**
+     * ID of every segment that is not yet flushed
+     */
+    static final int IN_MEMORY = -1;
+
+    final int id;
+    /**
+     * number of page indexed into the segment, including the deleted one
+     */
+    final int numOfPage;
+    /**
+     * number of page in the collection when the impacts of the segment were computed,
+     * 0 if the segment is not quantized
+     */
+    final int quantizedN;
+    /**
+     * pageID -> is live, must not be modified
+     */
+    private final BitSet liveDocs;
+    private final int numOfLivePage;
+    /**
+     * wordID -> frequency stream of the posting list, null if the segment is in database
+     */
+    private final HashMap<Integer, byte[]> postings;
+    /**
+     * wordID -> position stream of the posting list, null if the segment is in database
+     */
+    private final HashMap<Integer, byte[]> positions;
+
+    Segment(int id, int numOfPage, int quantizedN, BitSet liveDocs, HashMap<Integer, byte[]> postings,
+            HashMap<Integer, byte[]> positions) {
+        this.id = id;
+        this.numOfPage = numOfPage;
+        this.quantizedN = quantizedN;
+        this.liveDocs = liveDocs;
+        this.numOfLivePage = liveDocs.cardinality();
+        this.postings = postings;
+        this.positions = positions;
+    }
+
+    boolean inMemory() {
+        return postings != null;
+    }
+
+    /**
+     * get posting list of a word of an in memory segment
+     * @param wordID word ID
+     * @return the frequency stream, null if the word is not in the segment
+     */
+    byte[] getPostings(int wordID) {
+        return postings.get(wordID);
+    }
+
+    /**
+     * get positions of a word of an in memory segment
+     * @param wordID word ID
+     * @return the position stream, null if the word is not in the segment
+     */
+    byte[] getPositionRecord(int wordID) {
+        return positions.get(wordID);
+    }
+
+    HashMap<Integer, byte[]> getAllPostings() {
+        return postings;
+    }
+
+    boolean isLive(int pageID) {
+        return liveDocs.get(pageID);
+    }
+
+    boolean hasDeletion() {
+        return numOfLivePage < numOfPage;
+    }
+
+    int getNumOfLivePage() {
+        return numOfLivePage;
+    }
+
+    /**
+     * @return a copy of the live pages (BitSet.clone would resize the shared bitset)
+     */
+    BitSet getLiveDocs() {
+        return BitSet.valueOf(liveDocs.toLongArray());
+    }
+
+    /**
+     * @param pageID page to delete
+     * @return the same segment without that page
+     */
+    Segment withDeletion(int pageID) {
+        BitSet newLiveDocs = getLiveDocs();
+        newLiveDocs.clear(pageID);
+        return new Segment(id, numOfPage, quantizedN, newLiveDocs, postings, positions);
+    }
+
+    /**
+     * @return the term weight of one unit of impact, 0 if the segment is not quantized
+     */
+    double getImpactScale() {
+        return impactScale(quantizedN);
+    }
+
+    /**
+     * a term weight tf/maxTF * idf is at most log2(N), the idf of a word in a single page
+     * @param numOfPage N, number of page in the collection
+     * @return the term weight of one unit of impact
+     */
+    static double impactScale(int numOfPage) {
+        if (numOfPage <= 1) {
+            return 0;
+        }
+        return Math.log(numOfPage) / Math.log(2) / PostingListHandler.MAX_IMPACT;
+    }
+
+    /**
+     * key of the posting list (both streams) of a word in a segment, sorted by segment then by word
+     */
+    static byte[] postingKey(int segmentID, int wordID) {
+        return Converter.idPairTobyteArray(segmentID, wordID);
+    }
+
+    static byte[] segmentKey(int segmentID) {
+        return Converter.idTobyteArray(segmentID);
+    }
+}
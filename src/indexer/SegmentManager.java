@@ -0,0 +1,831 @@
+package indexer;
+
+import org.rocksdb.*;
+import util.Converter;
+import util.VarInt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * keep the list of segments of the inverted index in the column families of the database
+ *
+ * column families:
+ *     legacyPostings: posting lists of the old single mutable index, imported as a segment when opened
+ *     postings: (segmentID, wordID) -> frequency stream of the posting list
+ *     positions: (segmentID, wordID) -> position stream of the posting list, only read for phrases
+ *     segmentInfo: segmentID -> number of page indexed into the segment, N when its impacts were computed
+ *     liveDocs: segmentID -> bitset of live pageID
+ *     pendingPages: pageID -> words of a page indexed into an in memory segment, not yet flushed
+ *
+ * the list of segments is immutable and replaced as a whole on every change, so a reader take the
+ * current list once and keep using it without any lock. a background thread merge segments of
+ * similar number of live page (size tier) once a tier has MERGE_FACTOR segments
+ *
+ * a newly indexed page is written into pendingPages by the batch that commit the rest of the page,
+ * so the in memory segments are rebuilt from it after a restart. the pages added or deleted by a batch
+ * are kept aside and only change the list of segments once the batch is committed (see InvertedIndex.commit),
+ * so a failed commit leave the segments as the database
+ */
+class SegmentManager {
+    private static final int MAX_BUFFERED_PAGE = 100;
+    private static final int MERGE_FACTOR = 10;
+    private static final int BATCH_SIZE = 1000;
+
+    private final RocksDB db = Database.getInstance().getDB();
+    private final List<ColumnFamilyHandle> handles = Arrays.asList(
+            Database.getInstance().getHandle(Database.Family.legacyPostings),
+            Database.getInstance().getHandle(Database.Family.postings),
+            Database.getInstance().getHandle(Database.Family.segmentInfo),
+            Database.getInstance().getHandle(Database.Family.liveDocs),
+            Database.getInstance().getHandle(Database.Family.pendingPages),
+            Database.getInstance().getHandle(Database.Family.positions));
+    private final WriteOptions syncWrite = new WriteOptions().setSync(true);
+    private volatile List<Segment> segments = Collections.emptyList();
+    private int nextSegmentID = 0;
+    /**
+     * segments replaced by a merge, their posting lists are deleted on the next merge so that a
+     * reader still holding an old list of segments can finish its query
+     */
+    private final List<Segment> obsoleteSegments = new LinkedList<>();
+    /**
+     * changes of the batches not committed yet
+     */
+    private final Map<WriteBatch, Changes> uncommitted = new IdentityHashMap<>();
+    private final ExecutorService mergeThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "segment-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * pages added and deleted by one batch
+     */
+    private static class Changes {
+        /**
+         * pageID -> in memory segment of the page
+         */
+        private final Map<Integer, Segment> added = new LinkedHashMap<>();
+        private final Set<Integer> deleted = new HashSet<>();
+        /**
+         * segmentID -> pages deleted from the segment, so the live pages written for a segment
+         * include the earlier deletions of the batch
+         */
+        private final Map<Integer, BitSet> deletedBySegment = new HashMap<>();
+    }
+
+    /**
+     * weight of a word in a page, used to compute impacts
+     */
+    interface TermWeight {
+        double get(int wordID, int pageID, int frequency);
+    }
+
+    SegmentManager() {
+        try {
+            loadSegments();
+            dropOrphanPostings();
+            loadPendingPages();
+            importLegacyPostingLists();
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadSegments() throws RocksDBException {
+        List<Segment> loaded = new ArrayList<>();
+        RocksIterator iter = db.newIterator(handles.get(2));
+        for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+            int id = Converter.byteArrayToId(iter.key());
+            ByteBuffer info = ByteBuffer.wrap(iter.value());
+            int numOfPage = info.getInt();
+            int quantizedN = info.hasRemaining() ? info.getInt() : 0;
+            BitSet liveDocs = BitSet.valueOf(db.get(handles.get(3), iter.key()));
+            loaded.add(new Segment(id, numOfPage, quantizedN, liveDocs, null, null));
+            nextSegmentID = Math.max(nextSegmentID, id + 1);
+        }
+        segments = Collections.unmodifiableList(loaded);
+    }
+
+    /**
+     * delete posting lists left behind by a merge or flush interrupted before it was committed,
+     * and live pages of segments that no longer exist
+     */
+    private void dropOrphanPostings() throws RocksDBException {
+        Set<Integer> ids = new HashSet<>();
+        for (Segment segment : segments) {
+            ids.add(segment.id);
+        }
+        RocksIterator iter = db.newIterator(handles.get(1));
+        iter.seekToFirst();
+        while (iter.isValid()) {
+            int id = Converter.byteArrayToId(iter.key());
+            if (!ids.contains(id)) {
+                deletePostings(id);
+            }
+            iter.seek(Segment.segmentKey(id + 1));
+        }
+        // a page deletion committed after the merge that dropped its segment
+        RocksIterator liveDocsIter = db.newIterator(handles.get(3));
+        for (liveDocsIter.seekToFirst(); liveDocsIter.isValid(); liveDocsIter.next()) {
+            if (!ids.contains(Converter.byteArrayToId(liveDocsIter.key()))) {
+                db.delete(handles.get(3), liveDocsIter.key());
+            }
+        }
+    }
+
+    /**
+     * delete all posting lists (both streams) of a segment, deleteRange is not used as range deletion is still
+     * experimental in this version of RocksDB
+     * @param segmentID segment ID
+     */
+    private void deletePostings(int segmentID) throws RocksDBException {
+        try (WriteBatch batch = new WriteBatch();
+             RocksIterator iter = db.newIterator(handles.get(1))) {
+            for (iter.seek(Segment.segmentKey(segmentID)); iter.isValid() &&
+                    Converter.byteArrayToId(iter.key()) == segmentID; iter.next()) {
+                batch.delete(handles.get(1), iter.key());
+                batch.delete(handles.get(5), iter.key());
+            }
+            db.write(syncWrite, batch);
+        }
+    }
+
+    /**
+     * rebuild the in memory segments of the pages committed but not yet flushed
+     */
+    private void loadPendingPages() {
+        RocksIterator iter = db.newIterator(handles.get(4));
+        for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+            publish(Collections.emptyList(), bufferPage(Converter.byteArrayToId(iter.key()), decodePage(iter.value())));
+        }
+    }
+
+    /**
+     * encode the words of a page as: numOfWord, {wordID, frequency, {position delta}}, all varInt
+     * @param wordPositions wordID -> {position}
+     * @return bytes stored in pendingPages
+     */
+    private static byte[] encodePage(Map<Integer, int[]> wordPositions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarInt.write(out, wordPositions.size());
+        for (Map.Entry<Integer, int[]> entry : wordPositions.entrySet()) {
+            VarInt.write(out, entry.getKey());
+            VarInt.write(out, entry.getValue().length);
+            int prevPos = 0;
+            for (int pos : entry.getValue()) {
+                VarInt.write(out, pos - prevPos);
+                prevPos = pos;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static HashMap<Integer, int[]> decodePage(byte[] record) {
+        ByteBuffer in = ByteBuffer.wrap(record);
+        int numOfWord = VarInt.read(in);
+        HashMap<Integer, int[]> wordPositions = new HashMap<>(numOfWord * 2);
+        for (int i = 0; i < numOfWord; i++) {
+            int wordID = VarInt.read(in);
+            int[] positions = new int[VarInt.read(in)];
+            int pos = 0;
+            for (int j = 0; j < positions.length; j++) {
+                pos += VarInt.read(in);
+                positions[j] = pos;
+            }
+            wordPositions.put(wordID, positions);
+        }
+        return wordPositions;
+    }
+
+    /**
+     * turn the posting lists of the old single index (wordID -> posting list) into one segment
+     */
+    private void importLegacyPostingLists() throws RocksDBException {
+        TreeMap<Integer, PostingListHandler> postings = new TreeMap<>();
+        BitSet liveDocs = new BitSet();
+        try (WriteBatch batch = new WriteBatch()) {
+            RocksIterator iter = db.newIterator(handles.get(0));
+            for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                PostingListHandler postingList = new PostingListHandler(iter.value());
+                for (int pageID : postingList.getFrequencyRecord().keySet()) {
+                    liveDocs.set(pageID);
+                }
+                postings.put(Converter.byteArrayToId(iter.key()), postingList);
+                batch.delete(handles.get(0), iter.key());
+            }
+            if (postings.isEmpty()) {
+                return;
+            }
+            System.out.println("import " + postings.size() + " posting lists as a segment");
+            publish(Collections.emptyList(), writeSegment(postings, liveDocs, batch));
+        }
+    }
+
+    /**
+     * get the current segments, the list never change
+     * @return list of segments
+     */
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * get the posting list of a word in a segment, deleted pages are not removed
+     * @param segment segment
+     * @param wordID word ID
+     * @return the posting list, null if the word is not in the segment
+     */
+    byte[] getPostings(Segment segment, int wordID) {
+        if (segment.inMemory()) {
+            return segment.getPostings(wordID);
+        }
+        try {
+            return db.get(handles.get(1), Segment.postingKey(segment.id, wordID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * get the position stream of a word in a segment
+     * @param segment segment
+     * @param wordID word ID
+     * @return the position stream, null if the word is not in the segment or the posting list is
+     * not in the split format
+     */
+    private byte[] getPositionRecord(Segment segment, int wordID) {
+        if (segment.inMemory()) {
+            return segment.getPositionRecord(wordID);
+        }
+        try {
+            return db.get(handles.get(5), Segment.postingKey(segment.id, wordID));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * get relation: pageID -> frequency of a word, over all segments
+     * @param wordID word ID
+     * @return a hashMap
+     */
+    HashMap<Integer, Integer> getFrequencyRecord(int wordID) {
+        HashMap<Integer, Integer> frequencyRecord = new HashMap<>();
+        for (Segment segment : segments) {
+            byte[] record = getPostings(segment, wordID);
+            if (record == null) {
+                continue;
+            }
+            HashMap<Integer, Integer> partial = PostingListHandler.readFrequencyRecord(record);
+            if (segment.hasDeletion()) {
+                partial.keySet().removeIf(pageID -> !segment.isLive(pageID));
+            }
+            frequencyRecord.putAll(partial);
+        }
+        return frequencyRecord;
+    }
+
+    /**
+     * get the term weights of a word from the impacts stored with its posting lists,
+     * the frequency stream is the only thing read
+     * @param wordID word ID
+     * @param unquantized filled with pageID -> frequency of the live pages that have no impact
+     * @return pageID -> term weight of the live pages that have an impact
+     */
+    HashMap<Integer, Double> getImpacts(int wordID, HashMap<Integer, Integer> unquantized) {
+        HashMap<Integer, Double> weights = new HashMap<>();
+        for (Segment segment : segments) {
+            byte[] record = getPostings(segment, wordID);
+            if (record == null) {
+                continue;
+            }
+            double scale = segment.getImpactScale();
+            boolean hasUnquantized = false;
+            for (Map.Entry<Integer, Integer> entry : PostingListHandler.readImpactRecord(record).entrySet()) {
+                if (segment.hasDeletion() && !segment.isLive(entry.getKey())) {
+                    continue;
+                }
+                if (entry.getValue() == 0 || scale == 0) {
+                    hasUnquantized = true;
+                } else {
+                    weights.put(entry.getKey(), entry.getValue() * scale);
+                }
+            }
+            if (!hasUnquantized) {
+                continue;
+            }
+            for (Map.Entry<Integer, Integer> entry : PostingListHandler.readFrequencyRecord(record).entrySet()) {
+                if (segment.isLive(entry.getKey()) && !weights.containsKey(entry.getKey())) {
+                    unquantized.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * get the positions of a word in a page, only the segment that page live in is read and
+     * the position stream is only read if the word is in that page
+     * @param wordID word ID
+     * @param pageID page ID
+     * @return sorted positions, null if the word is not in that page
+     */
+    int[] getPositions(int wordID, int pageID) {
+        for (Segment segment : segments) {
+            if (segment.isLive(pageID)) {
+                byte[] record = getPostings(segment, wordID);
+                if (record == null) {
+                    return null;
+                }
+                if (!PostingListHandler.isSplit(record)) {
+                    return PostingListHandler.readPositions(record, pageID);
+                }
+                PostingCursor cursor = new PostingCursor(record);
+                if (cursor.advance(pageID) != pageID) {
+                    return null;
+                }
+                return cursor.positions(getPositionRecord(segment, wordID));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * find the live pages containing every word. the posting lists are intersected segment by
+     * segment: the cursor of the shortest list lead and the others advance to its page, the
+     * blocks in between are skipped, so the cost follow the shortest list and the position
+     * streams are only read if a page contain every word
+     * @param wordIDs word IDs
+     * @return pageID -> {positions of each word, in the order of wordIDs}
+     */
+    HashMap<Integer, int[][]> getCommonPages(int[] wordIDs) {
+        HashMap<Integer, int[][]> commonPages = new HashMap<>();
+        for (Segment segment : segments) {
+            PostingCursor[] cursors = new PostingCursor[wordIDs.length];
+            for (int i = 0; i < wordIDs.length && (i == 0 || cursors[i - 1] != null); i++) {
+                byte[] record = getPostings(segment, wordIDs[i]);
+                cursors[i] = record == null ? null : new PostingCursor(record);
+            }
+            if (wordIDs.length == 0 || cursors[wordIDs.length - 1] == null) {
+                continue;
+            }
+            Integer[] order = new Integer[wordIDs.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(cursors[a].documentFrequency(), cursors[b].documentFrequency()));
+            PostingCursor lead = cursors[order[0]];
+            byte[][] positionRecords = new byte[wordIDs.length][];
+            int target = lead.nextPage();
+            while (target != PostingCursor.NO_MORE_PAGES) {
+                int pageID = target;
+                for (int i = 1; i < order.length && pageID == target; i++) {
+                    pageID = cursors[order[i]].advance(target);
+                }
+                if (pageID != target) {
+                    target = lead.advance(pageID);
+                    continue;
+                }
+                if (segment.isLive(pageID)) {
+                    int[][] positions = new int[wordIDs.length][];
+                    for (int i = 0; i < wordIDs.length; i++) {
+                        if (positionRecords[i] == null) {
+                            positionRecords[i] = getPositionRecord(segment, wordIDs[i]);
+                        }
+                        positions[i] = cursors[i].positions(positionRecords[i]);
+                    }
+                    commonPages.put(pageID, positions);
+                }
+                target = lead.nextPage();
+            }
+        }
+        return commonPages;
+    }
+
+    /**
+     * index a page into a new in memory segment, the page is saved in pendingPages by the batch
+     * and searchable once the batch is committed
+     * @param pageID page ID
+     * @param wordPositions wordID -> {position} of the page
+     * @param batch batch committing the page
+     */
+    synchronized void addPage(int pageID, Map<Integer, int[]> wordPositions, WriteBatch batch) throws RocksDBException {
+        batch.put(handles.get(4), Converter.idTobyteArray(pageID), encodePage(wordPositions));
+        uncommitted.computeIfAbsent(batch, b -> new Changes()).added.put(pageID, bufferPage(pageID, wordPositions));
+    }
+
+    /**
+     * @return an in memory segment holding only the page
+     */
+    private static Segment bufferPage(int pageID, Map<Integer, int[]> wordPositions) {
+        HashMap<Integer, byte[]> postings = new HashMap<>(wordPositions.size() * 2);
+        HashMap<Integer, byte[]> positions = new HashMap<>(wordPositions.size() * 2);
+        for (Map.Entry<Integer, int[]> entry : wordPositions.entrySet()) {
+            PostingListHandler postingList = new PostingListHandler(pageID, entry.getValue());
+            postings.put(entry.getKey(), postingList.toFrequencyBytes());
+            positions.put(entry.getKey(), postingList.toPositionBytes());
+        }
+        BitSet liveDocs = new BitSet();
+        liveDocs.set(pageID);
+        return new Segment(Segment.IN_MEMORY, 1, 0, liveDocs, postings, positions);
+    }
+
+    /**
+     * flush the buffered segments once there are MAX_BUFFERED_PAGE of them, call it only after
+     * the batch of the last added page is committed
+     */
+    synchronized void flushIfFull() {
+        int numOfBuffered = 0;
+        for (Segment segment : segments) {
+            if (segment.inMemory()) {
+                numOfBuffered++;
+            }
+        }
+        if (numOfBuffered >= MAX_BUFFERED_PAGE) {
+            flush();
+        }
+    }
+
+    /**
+     * write all in memory segments into the database as one segment, the pages are removed from
+     * pendingPages in the same batch as the segment info is written
+     */
+    synchronized void flush() {
+        List<Segment> buffered = new ArrayList<>();
+        TreeMap<Integer, PostingListHandler> postings = new TreeMap<>();
+        BitSet liveDocs = new BitSet();
+        for (Segment segment : segments) {
+            if (!segment.inMemory()) {
+                continue;
+            }
+            buffered.add(segment);
+            if (segment.getNumOfLivePage() == 0) {
+                continue;
+            }
+            liveDocs.or(segment.getLiveDocs());
+            for (Map.Entry<Integer, byte[]> entry : segment.getAllPostings().entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new PostingListHandler(""))
+                        .addAll(new PostingListHandler(entry.getValue(), segment.getPositionRecord(entry.getKey())));
+            }
+        }
+        if (buffered.isEmpty()) {
+            return;
+        }
+        try (WriteBatch commit = new WriteBatch()) {
+            for (int pageID = liveDocs.nextSetBit(0); pageID >= 0; pageID = liveDocs.nextSetBit(pageID + 1)) {
+                commit.delete(handles.get(4), Converter.idTobyteArray(pageID));
+            }
+            if (postings.isEmpty()) {
+                db.write(syncWrite, commit);
+            }
+            publish(buffered, postings.isEmpty() ? null : writeSegment(postings, liveDocs, commit));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return;
+        }
+        mergeThread.submit(this::maybeMerge);
+    }
+
+    /**
+     * compute the impacts of the segments flushed since the last quantization, or quantized when the
+     * number of page in the collection differed from now by more than maxDrift, by rewriting each of
+     * them on the merge thread. return when all segments are done
+     * @param termWeight weight of a word in a page under the current collection statistics
+     * @param numOfPage N, current number of page in the collection
+     * @param maxDrift relative change of N allowed before a segment is quantized again, 0 to redo all
+     */
+    void quantizeImpacts(TermWeight termWeight, int numOfPage, double maxDrift) {
+        Future<?> done = mergeThread.submit(() -> {
+            for (Segment segment : segments) {
+                if (segment.inMemory() || segment.getNumOfLivePage() == 0) {
+                    continue;
+                }
+                if (segment.quantizedN > 0 && Math.abs(segment.quantizedN - numOfPage) <= maxDrift * numOfPage) {
+                    continue;
+                }
+                merge(Collections.singletonList(segment), termWeight, numOfPage);
+            }
+            return null;
+        });
+        try {
+            done.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * mark a page as deleted in the segment it live in, it is still found until the batch is committed
+     * @param pageID page ID
+     * @param batch batch committing the deletion
+     */
+    synchronized void deletePage(int pageID, WriteBatch batch) throws RocksDBException {
+        Changes changes = uncommitted.computeIfAbsent(batch, b -> new Changes());
+        if (changes.added.remove(pageID) != null) {
+            batch.delete(handles.get(4), Converter.idTobyteArray(pageID));
+        }
+        for (Segment segment : segments) {
+            if (!segment.isLive(pageID)) {
+                continue;
+            }
+            if (segment.inMemory()) {
+                batch.delete(handles.get(4), Converter.idTobyteArray(pageID));
+                continue;
+            }
+            BitSet deleted = changes.deletedBySegment.computeIfAbsent(segment.id, id -> new BitSet());
+            deleted.set(pageID);
+            BitSet liveDocs = segment.getLiveDocs();
+            liveDocs.andNot(deleted);
+            batch.put(handles.get(3), Segment.segmentKey(segment.id), liveDocs.toByteArray());
+        }
+        changes.deleted.add(pageID);
+    }
+
+    /**
+     * apply the pages added and deleted by a batch, call it once the batch is committed
+     * @param batch the batch
+     */
+    synchronized void committed(WriteBatch batch) {
+        Changes changes = uncommitted.remove(batch);
+        if (changes == null) {
+            return;
+        }
+        List<Segment> updated = new ArrayList<>(segments.size() + changes.added.size());
+        for (Segment segment : segments) {
+            for (int pageID : changes.deleted) {
+                if (segment.isLive(pageID)) {
+                    segment = segment.withDeletion(pageID);
+                }
+            }
+            if (!segment.inMemory() || segment.getNumOfLivePage() > 0) {
+                updated.add(segment);
+            }
+        }
+        updated.addAll(changes.added.values());
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * forget the changes of a batch that failed to commit
+     * @param batch the batch
+     */
+    synchronized void discard(WriteBatch batch) {
+        uncommitted.remove(batch);
+    }
+
+    /**
+     * replace some segments by a new one
+     * @param removed segments to remove
+     * @param added segment to add, can be null
+     */
+    private synchronized void publish(List<Segment> removed, Segment added) {
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.removeAll(removed);
+        if (added != null) {
+            updated.add(added);
+        }
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * write posting lists as a new segment, the segment exist once its info is written
+     * @param postings wordID -> posting list
+     * @param liveDocs pages indexed into the segment
+     * @param commit batch written together with the segment info
+     * @return the segment
+     */
+    private Segment writeSegment(SortedMap<Integer, PostingListHandler> postings, BitSet liveDocs,
+                                 WriteBatch commit) throws RocksDBException {
+        int id;
+        synchronized (this) {
+            id = nextSegmentID++;
+        }
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<Integer, PostingListHandler> entry : postings.entrySet()) {
+                byte[] key = Segment.postingKey(id, entry.getKey());
+                batch.put(handles.get(1), key, entry.getValue().toFrequencyBytes());
+                batch.put(handles.get(5), key, entry.getValue().toPositionBytes());
+                if (batch.count() >= BATCH_SIZE) {
+                    db.write(syncWrite, batch);
+                    batch.clear();
+                }
+            }
+            db.write(syncWrite, batch);
+        }
+        Segment segment = new Segment(id, liveDocs.cardinality(), 0, liveDocs, null, null);
+        putSegmentInfo(commit, segment);
+        db.write(syncWrite, commit);
+        return segment;
+    }
+
+    private void putSegmentInfo(WriteBatch batch, Segment segment) throws RocksDBException {
+        byte[] key = Segment.segmentKey(segment.id);
+        batch.put(handles.get(2), key, ByteBuffer.allocate(8).putInt(segment.numOfPage).putInt(segment.quantizedN).array());
+        batch.put(handles.get(3), key, segment.getLiveDocs().toByteArray());
+    }
+
+    /**
+     * run on the merge thread: merge segments until no size tier is full
+     */
+    private void maybeMerge() {
+        try {
+            for (Segment segment : obsoleteSegments) {
+                deletePostings(segment.id);
+            }
+            obsoleteSegments.clear();
+            List<Segment> toMerge;
+            while ((toMerge = findMerge()) != null) {
+                merge(toMerge, null, 0);
+            }
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * segments with no live page are always merged (dropped), otherwise segments are grouped into
+     * tiers by the log of their number of live page and the smallest segments of a full tier are merged
+     * @return segments to merge, null if nothing to merge
+     */
+    private List<Segment> findMerge() {
+        List<Segment> empty = new ArrayList<>();
+        TreeMap<Integer, List<Segment>> tiers = new TreeMap<>();
+        for (Segment segment : segments) {
+            if (segment.inMemory()) {
+                continue;
+            }
+            if (segment.getNumOfLivePage() == 0) {
+                empty.add(segment);
+                continue;
+            }
+            int tier = (int) (Math.log(segment.getNumOfLivePage()) / Math.log(MERGE_FACTOR));
+            tiers.computeIfAbsent(tier, k -> new ArrayList<>()).add(segment);
+        }
+        if (!empty.isEmpty()) {
+            return empty;
+        }
+        for (List<Segment> tier : tiers.values()) {
+            if (tier.size() >= MERGE_FACTOR) {
+                tier.sort(java.util.Comparator.comparingInt(Segment::getNumOfLivePage));
+                return tier.subList(0, MERGE_FACTOR);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * merge the live pages of some segments into a new segment, the posting lists of each word
+     * are read in order from all segments at the same time so only one word is kept in memory
+     *
+     * without a term weight the impacts are kept if every source is quantized, converted to the scale
+     * of the source quantized with the largest collection, so a segment is either fully quantized or
+     * not at all. with a term weight every page is quantized again
+     * @param sources segments to merge
+     * @param termWeight weight of each page, null to keep the impacts of the sources
+     * @param numOfPage N used by the term weight
+     */
+    private void merge(List<Segment> sources, TermWeight termWeight, int numOfPage) throws RocksDBException {
+        BitSet liveDocs = new BitSet();
+        BitSet[] sourceLiveDocs = new BitSet[sources.size()];
+        int quantizedN = numOfPage;
+        for (int i = 0; i < sourceLiveDocs.length; i++) {
+            sourceLiveDocs[i] = sources.get(i).getLiveDocs();
+            liveDocs.or(sourceLiveDocs[i]);
+            if (termWeight == null) {
+                quantizedN = Math.max(quantizedN, sources.get(i).quantizedN);
+            }
+        }
+        for (Segment source : sources) {
+            if (termWeight == null && source.quantizedN == 0 && source.getNumOfLivePage() > 0) {
+                quantizedN = 0;
+            }
+        }
+        double scale = Segment.impactScale(quantizedN);
+        int id = -1;
+        if (!liveDocs.isEmpty()) {
+            synchronized (this) {
+                id = nextSegmentID++;
+            }
+            RocksIterator[] iters = new RocksIterator[sources.size()];
+            for (int i = 0; i < iters.length; i++) {
+                iters[i] = db.newIterator(handles.get(1));
+                iters[i].seek(Segment.segmentKey(sources.get(i).id));
+            }
+            try (WriteBatch batch = new WriteBatch()) {
+                while (true) {
+                    int wordID = Integer.MAX_VALUE;
+                    for (int i = 0; i < iters.length; i++) {
+                        if (inSegment(iters[i], sources.get(i))) {
+                            wordID = Math.min(wordID, Converter.byteArrayToId(iters[i].key(), 4));
+                        }
+                    }
+                    if (wordID == Integer.MAX_VALUE) {
+                        break;
+                    }
+                    PostingListHandler merged = new PostingListHandler("");
+                    for (int i = 0; i < iters.length; i++) {
+                        if (inSegment(iters[i], sources.get(i)) && Converter.byteArrayToId(iters[i].key(), 4) == wordID) {
+                            PostingListHandler postingList = new PostingListHandler(iters[i].value(),
+                                    db.get(handles.get(5), iters[i].key()));
+                            postingList.retain(sourceLiveDocs[i]);
+                            if (termWeight == null) {
+                                postingList.rescaleImpacts(sources.get(i).getImpactScale(), scale);
+                            }
+                            merged.addAll(postingList);
+                            iters[i].next();
+                        }
+                    }
+                    if (termWeight != null && scale > 0) {
+                        for (Map.Entry<Integer, Integer> entry : merged.getFrequencyRecord().entrySet()) {
+                            merged.setImpact(entry.getKey(), PostingListHandler.quantize(
+                                    termWeight.get(wordID, entry.getKey(), entry.getValue()), scale));
+                        }
+                    }
+                    if (!merged.isEmpty()) {
+                        byte[] key = Segment.postingKey(id, wordID);
+                        batch.put(handles.get(1), key, merged.toFrequencyBytes());
+                        batch.put(handles.get(5), key, merged.toPositionBytes());
+                    }
+                    if (batch.count() >= BATCH_SIZE) {
+                        db.write(syncWrite, batch);
+                        batch.clear();
+                    }
+                }
+                db.write(syncWrite, batch);
+            } finally {
+                for (RocksIterator iter : iters) {
+                    iter.close();
+                }
+            }
+        }
+        commitMerge(sources, id, scale > 0 ? quantizedN : 0, liveDocs);
+    }
+
+    private static boolean inSegment(RocksIterator iter, Segment segment) {
+        return iter.isValid() && Converter.byteArrayToId(iter.key()) == segment.id;
+    }
+
+    /**
+     * switch the merged segments to the new one, pages deleted while merging are deleted from it
+     */
+    private synchronized void commitMerge(List<Segment> sources, int id, int quantizedN, BitSet liveDocs) throws RocksDBException {
+        int numOfPage = liveDocs.cardinality();
+        List<Segment> current = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (Segment source : sources) {
+                if (segment.id == source.id) {
+                    BitSet deleted = source.getLiveDocs();
+                    deleted.andNot(segment.getLiveDocs());
+                    liveDocs.andNot(deleted);
+                    current.add(segment);
+                }
+            }
+        }
+        Segment merged = null;
+        try (WriteBatch batch = new WriteBatch()) {
+            if (id != -1) {
+                merged = new Segment(id, numOfPage, quantizedN, liveDocs, null, null);
+                putSegmentInfo(batch, merged);
+            }
+            for (Segment source : sources) {
+                batch.delete(handles.get(2), Segment.segmentKey(source.id));
+                batch.delete(handles.get(3), Segment.segmentKey(source.id));
+            }
+            db.write(syncWrite, batch);
+        }
+        publish(current, merged);
+        obsoleteSegments.addAll(sources);
+    }
+
+    /**
+     * print all segments and their posting lists
+     */
+    void printAll() throws RocksDBException {
+        for (Segment segment : segments) {
+            System.out.println("segment: " + segment.id + ", page: " + segment.numOfPage +
+                    ", live page: " + segment.getNumOfLivePage() + ", quantized with N: " + segment.quantizedN);
+            if (segment.inMemory()) {
+                for (Map.Entry<Integer, byte[]> entry : segment.getAllPostings().entrySet()) {
+                    System.out.println("wordID: " + entry.getKey() + '\n' +
+                            "appear at: " + new PostingListHandler(entry.getValue(),
+                            segment.getPositionRecord(entry.getKey())) + "\n");
+                }
+                continue;
+            }
+            RocksIterator iter = db.newIterator(handles.get(1));
+            for (iter.seek(Segment.segmentKey(segment.id)); inSegment(iter, segment); iter.next()) {
+                System.out.println("wordID: " + Converter.byteArrayToId(iter.key(), 4) + '\n' +
+                        "appear at: " + new PostingListHandler(iter.value(),
+                        db.get(handles.get(5), iter.key())) + "\n");
+            }
+        }
+    }
+}
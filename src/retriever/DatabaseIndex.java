@@ -0,0 +1,53 @@
+package retriever;
+
+import indexer.Indexer;
+import indexer.InvertedIndex;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * search index read from the database, always up to date with the crawler
+ */
+class DatabaseIndex implements SearchIndex {
+    private static final DatabaseIndex INSTANCE = new DatabaseIndex();
+    private final Indexer indexer = Indexer.getInstance();
+    private final InvertedIndex invertedIndex = InvertedIndex.getInstance();
+    private final PreProcessor preProcessor = PreProcessor.getInstance();
+    private final PageRank pageRank = PageRank.getInstance();
+
+    static DatabaseIndex getInstance() {
+        return INSTANCE;
+    }
+
+    private DatabaseIndex() {
+    }
+
+    public int getWordID(String word) {
+        return indexer.searchIDByWord(word, false);
+    }
+
+    public HashMap<Integer, Double> getTermWeights(int wordID) {
+        return invertedIndex.getTermWeights(wordID);
+    }
+
+    public HashMap<Integer, int[][]> getCommonPages(int[] wordIDs) {
+        return invertedIndex.getCommonPages(wordIDs);
+    }
+
+    public double getTermWeight(int wordID, int pageID, int frequency) {
+        return invertedIndex.getTermWeight(wordID, pageID, frequency);
+    }
+
+    public double getDocLength(int pageID) {
+        return preProcessor.getDocLength(pageID);
+    }
+
+    public double getPageRank(int pageID) {
+        return pageRank.getPageRank(pageID);
+    }
+
+    public Set<String> getTitleWords(int pageID) {
+        return invertedIndex.getTitleWords(pageID);
+    }
+}
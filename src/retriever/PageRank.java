@@ -1,10 +1,12 @@
 package retriever;
 
+import indexer.Database;
 import indexer.InvertedIndex;
 import indexer.PageProperty;
-import org.rocksdb.Options;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import util.Converter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -15,23 +17,19 @@ public class PageRank {
     private static final PageRank INSTANCE = new PageRank();
     private final InvertedIndex invertedIndex = InvertedIndex.getInstance();
     private final PageProperty pageProperty = PageProperty.getInstance();
-    private RocksDB pageRankDb;
+    private final RocksDB db = Database.getInstance().getDB();
+    private final ColumnFamilyHandle pageRankHandle = Database.getInstance().getHandle(Database.Family.pageRank);
 
     public static PageRank getInstance() {
         return INSTANCE;
     }
 
     private PageRank(){
-        try {
-            pageRankDb = RocksDB.open(new Options().setCreateIfMissing(true), "database/pageRankDB");
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
     }
 
     public double getPageRank(int pageID) {
         try {
-            return Double.parseDouble(new String(pageRankDb.get(String.valueOf(pageID).getBytes())));
+            return Double.parseDouble(new String(db.get(pageRankHandle, Converter.idTobyteArray(pageID))));
         } catch (RocksDBException e) {
             e.printStackTrace();
             return -1;
@@ -71,7 +69,7 @@ public class PageRank {
                 for (Map.Entry<Integer, Double> entry: currentPageRankResult.entrySet()) {
                     try {
                         System.out.println(entry.getKey() +": "+entry.getValue());
-                        pageRankDb.put(String.valueOf(entry.getKey()).getBytes(), String.valueOf(entry.getValue()).getBytes());
+                        db.put(pageRankHandle, Converter.idTobyteArray(entry.getKey()), String.valueOf(entry.getValue()).getBytes());
                     } catch (RocksDBException e) {
                         e.printStackTrace();
                     }
@@ -1,10 +1,15 @@
 package retriever;
 
+import indexer.Database;
 import indexer.InvertedIndex;
+import indexer.NearDuplicates;
 import indexer.PageProperty;
-import org.rocksdb.Options;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import util.Converter;
+
+import java.util.Arrays;
 
 
 public class PreProcessor {
@@ -12,14 +17,16 @@ public class PreProcessor {
     private static final PreProcessor instance = new PreProcessor();
     private final PageProperty pageProperty = PageProperty.getInstance();
     private final InvertedIndex invertedIndex = InvertedIndex.getInstance();
+    private final NearDuplicates nearDuplicates = NearDuplicates.getInstance();
+    private final RocksDB db = Database.getInstance().getDB();
     /**
      * store doc length of each page : pageID -> document length
      */
-    private RocksDB docLengthDB;
+    private final ColumnFamilyHandle docLengthHandle = Database.getInstance().getHandle(Database.Family.docLength);
     /**
      * store pageID -> {parentID}
      */
-    private RocksDB pageParentDB;
+    private final ColumnFamilyHandle pageParentHandle = Database.getInstance().getHandle(Database.Family.pageParent);
 
     public static PreProcessor getInstance() {
         return instance;
@@ -27,7 +34,7 @@ public class PreProcessor {
 
     double getDocLength(int pageID) {
         try {
-            return Double.parseDouble(new String(docLengthDB.get(String.valueOf(pageID).getBytes())));
+            return Double.parseDouble(new String(db.get(docLengthHandle, Converter.idTobyteArray(pageID))));
         } catch (RocksDBException e) {
             e.printStackTrace();
             return -1;
@@ -35,17 +42,12 @@ public class PreProcessor {
     }
 
     private PreProcessor() {
-        try {
-            docLengthDB = RocksDB.open(new Options().setCreateIfMissing(true), "database/docLengthDB");
-            pageParentDB = RocksDB.open(new Options().setCreateIfMissing(true), "database/pageParentDB");
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        }
     }
 
     public String[] getParentIDs(int pageID) {
         try {
-            return new String(pageParentDB.get(String.valueOf(pageID).getBytes())).split(" ");
+            byte[] content = db.get(pageParentHandle, Converter.idTobyteArray(pageID));
+            return content == null ? new String[0] : new String(content).split(" ");
         } catch (RocksDBException e) {
             e.printStackTrace();
             return null;
@@ -71,6 +73,9 @@ public class PreProcessor {
         return String.valueOf(result);
     }
 
+    /**
+     * a link to a page not indexed because it duplicates an indexed page count as a link to the indexed page
+     */
     private void prepareParentPageRelationship() throws RocksDBException {
         for (int parentID : pageProperty.getAllPageID()) {
             String[] chilIDs = invertedIndex.getChildIDs(parentID);
@@ -80,17 +85,23 @@ public class PreProcessor {
                 }
                 int childID = Integer.parseInt(chilID);
                 if (pageProperty.getUrl(childID) == null) {
-                    continue;
+                    childID = nearDuplicates.getCanonicalPage(childID);
+                    if (childID == -1 || childID == parentID) {
+                        continue;
+                    }
                 }
                 System.out.println(parentID + " have child " + childID);
                 byte[] content;
-                content = pageParentDB.get(String.valueOf(childID).getBytes());
+                content = db.get(pageParentHandle, Converter.idTobyteArray(childID));
                 if (content == null) {
                     content = String.valueOf(parentID).getBytes();
+                } else if (Arrays.asList(new String(content).split(" ")).contains(String.valueOf(parentID))) {
+                    // the parent also link to the indexed page itself
+                    continue;
                 } else {
                     content = (new String(content) + " " + parentID).getBytes();
                 }
-                pageParentDB.put(String.valueOf(childID).getBytes(), content);
+                db.put(pageParentHandle, Converter.idTobyteArray(childID), content);
             }
         }
     }
@@ -115,7 +126,7 @@ public class PreProcessor {
                 }
                 documentLength = Math.sqrt(documentLength);
                 System.out.println("save to db");
-                docLengthDB.put(String.valueOf(pageID).getBytes(), String.valueOf(documentLength).getBytes());
+                db.put(docLengthHandle, Converter.idTobyteArray(pageID), String.valueOf(documentLength).getBytes());
             }
         } catch (RocksDBException e) {
             e.printStackTrace();
@@ -126,6 +137,7 @@ public class PreProcessor {
         PreProcessor preProcessor = getInstance();
         //preProcessor.preComputeDocumentLength();
         //preProcessor.prepareParentPageRelationship();
+        //InvertedIndex.getInstance().quantizeImpacts(0.1);
         System.out.println(preProcessor.getParentPages(9956));
     }
 }
@@ -1,10 +1,9 @@
 package retriever;
 
-import indexer.Indexer;
-import indexer.InvertedIndex;
 import util.Word;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -12,14 +11,21 @@ import java.util.stream.Collectors;
 
 public class Retrieval {
 
-    private final Indexer indexer = Indexer.getInstance();
-    private final InvertedIndex invertedIndex = InvertedIndex.getInstance();
-    private final PreProcessor preProcessor = PreProcessor.getInstance();
-    private final PageRank pageRank = PageRank.getInstance();
+    private final SearchIndex index;
 
     private final LinkedHashMap<Integer, Double> top50Result = new LinkedHashMap<>();
 
-    public Retrieval(String query) { //pass value here
+    public Retrieval(String query) {
+        this(query, DatabaseIndex.getInstance());
+    }
+
+    /**
+     * rank the pages of a query
+     * @param query query
+     * @param index the database or a snapshot of it
+     */
+    public Retrieval(String query, SearchIndex index) { //pass value here
+        this.index = index;
         Set<String> afterProcessQuery = processQuery(query);
 
         if (!afterProcessQuery.isEmpty()) {  //0.7*cosine sim + 0.3*page rank + 0.2(if title match)
@@ -64,14 +70,13 @@ public class Retrieval {
         for (String queryWord : afterProcessQuery) {
             if (queryWord.contains(" ")) { //if phrase
                 String[] phrase = queryWord.split(" "); //each word
-                Integer[] wordID = new Integer[phrase.length]; // each word of their wordID
-                Set<Integer> commonDocID = null; // to store the common docID,eg hong, kong both store in [1, 129, 2, 130, 131, 4, 132,...]
+                int[] wordID = new int[phrase.length]; // each word of their wordID
                 boolean phraseInKeyword = true;  // all phrase words should appear in keyword, eg phrase "hkust abc", abc is not in keyword-> ignore it
 
 
                 // check all phrase words should appear in keyword
                 for(int wordOrder = 0; wordOrder < phrase.length; wordOrder++){
-                    wordID[wordOrder] = indexer.searchIDByWord(phrase[wordOrder], false);
+                    wordID[wordOrder] = index.getWordID(phrase[wordOrder]);
                     if (wordID[wordOrder] == -1) {
                         phraseInKeyword = false;
                         break;
@@ -80,45 +85,36 @@ public class Retrieval {
                 if (!phraseInKeyword) continue;
                 else numOfQueryWord += phrase.length-1;
 
-                // to find the common docID
-                for(int wordOrder = 0; wordOrder < phrase.length; wordOrder++){
-                    if (commonDocID == null) commonDocID = invertedIndex.getRelatedPage(wordID[wordOrder]);
-                    else commonDocID.retainAll(invertedIndex.getRelatedPage(wordID[wordOrder]));
-                }
+                // the common docID with the positions of each word, eg hong, kong both store in [1, 129, 2, 130, 131, 4, 132,...]
+                HashMap<Integer, int[][]> commonDocID = index.getCommonPages(wordID);
 
                 // to check the case -> no more than 3 words apart
-                assert commonDocID != null;
-                for(Integer docID: commonDocID){
-                    List<LinkedList<Integer>> wordPositions = new LinkedList<>();
-                    for(int wordOrder = 0; wordOrder < phrase.length; wordOrder++) {
-                        wordPositions.add(invertedIndex.getWordPositionsInPage(wordID[wordOrder], docID));
-                    }
+                for(Map.Entry<Integer, int[][]> entry: commonDocID.entrySet()){
+                    int docID = entry.getKey();
+                    int[][] wordPositions = entry.getValue();
 
                     boolean adjacencyConditionsFulfil = true;
-                    for (int i = 0; i < wordPositions.size() - 1; i++) {
-                        if (findSmallestSeparation(wordPositions.get(i), wordPositions.get(i + 1)) > 3) {
+                    for (int i = 0; i < wordPositions.length - 1; i++) {
+                        if (findSmallestSeparation(wordPositions[i], wordPositions[i + 1]) > 3) {
                             adjacencyConditionsFulfil = false;
                             break;
                         }
                     }
 
                     if(adjacencyConditionsFulfil) {
-                        for (String s : phrase) {
-                            double partialScore = invertedIndex.getTermWeight(s, docID);
-                            allResultList.merge(docID, partialScore, Double::sum);
+                        for (int wordOrder = 0; wordOrder < phrase.length; wordOrder++) {
+                            allResultList.merge(docID, index.getTermWeight(wordID[wordOrder], docID,
+                                    wordPositions[wordOrder].length), Double::sum);
                         }
                     }
                 }
 
             }
             else {
-                Integer currentWordID = indexer.searchIDByWord(queryWord, false);
+                int currentWordID = index.getWordID(queryWord);
                 if(currentWordID != -1) {
-                    Set<Integer> pageIDs = invertedIndex.getRelatedPage(currentWordID);
-
-                    for (Integer pageID : pageIDs) {
-                        double partialScore = invertedIndex.getTermWeight(queryWord, pageID);
-                        allResultList.merge(pageID, partialScore, Double::sum);
+                    for (Map.Entry<Integer, Double> entry : index.getTermWeights(currentWordID).entrySet()) {
+                        allResultList.merge(entry.getKey(), entry.getValue(), Double::sum);
                     }
                 }
             }
@@ -126,7 +122,7 @@ public class Retrieval {
         double queryLength = Math.sqrt(numOfQueryWord);
 
         for (Integer pageID: allResultList.keySet()) {
-            double documentLength = preProcessor.getDocLength(pageID);
+            double documentLength = index.getDocLength(pageID);
             double afterNormalized = allResultList.get(pageID)/(documentLength*queryLength);
 
             allResultList.put(pageID, afterNormalized);
@@ -136,20 +132,20 @@ public class Retrieval {
         return allResultList;
     }
 
-    private int findSmallestSeparation(LinkedList<Integer> array1, LinkedList<Integer> array2) {
-        int array1Length = array1.size(), array2Length = array2.size();
+    private int findSmallestSeparation(int[] array1, int[] array2) {
+        int array1Length = array1.length, array2Length = array2.length;
         int array1CurrentIndex = 0, array2CurrentIndex = 0;
 
         int result = Integer.MAX_VALUE;
         while (array1CurrentIndex < array1Length && array2CurrentIndex < array2Length) {
-            int tempDiff = array2.get(array2CurrentIndex) - array1.get(array1CurrentIndex);
+            int tempDiff = array2[array2CurrentIndex] - array1[array1CurrentIndex];
             if (tempDiff > 0){
                 if (tempDiff < result){
                     result = tempDiff;
                 }
             }
 
-            if (array1.get(array1CurrentIndex) < array2.get(array2CurrentIndex))
+            if (array1[array1CurrentIndex] < array2[array2CurrentIndex])
                 array1CurrentIndex++;
             else
                 array2CurrentIndex++;
@@ -159,7 +155,7 @@ public class Retrieval {
 
     private void combineWithPageRank(HashMap<Integer, Double> cosineSimilarityResult){
         for (Integer docID: cosineSimilarityResult.keySet()) {
-            double updatedScore = cosineSimilarityResult.get(docID) * 0.7 + pageRank.getPageRank(docID) * 0.3;
+            double updatedScore = cosineSimilarityResult.get(docID) * 0.7 + index.getPageRank(docID) * 0.3;
             cosineSimilarityResult.put(docID, updatedScore);
         }
     }
@@ -167,7 +163,7 @@ public class Retrieval {
     private void titleMatch (Set<String> afterProcessQuery, HashMap<Integer, Double> cosineSimAddPageRankResult){
         for (Integer pageID: cosineSimAddPageRankResult.keySet()) {
             boolean foundQueryInTitle = false;
-            Set<String> titleWord = invertedIndex.getTitleWords(pageID);
+            Set<String> titleWord = index.getTitleWords(pageID);
 
             for (String queryWord : afterProcessQuery) {
                 if (queryWord.contains(" ")) {
@@ -226,7 +222,8 @@ public class Retrieval {
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        SearchIndex index = args.length > 0 ? new Snapshot(args[0]) : DatabaseIndex.getInstance();
         while (true){
             System.out.println("Enter query");
             Scanner scanner = new Scanner(System.in);  // Create a Scanner object
@@ -235,7 +232,7 @@ public class Retrieval {
                 break;
             }
             long start = System.nanoTime();
-            Retrieval newQuery = new Retrieval(query);
+            Retrieval newQuery = new Retrieval(query, index);
             newQuery.printAll();
             System.out.print("search take ");
             System.out.print((System.nanoTime() - start) / 1000000000.0);
@@ -0,0 +1,48 @@
+package retriever;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * what Retrieval read to rank the pages of a query, either the live database written by the
+ * crawler (DatabaseIndex) or a read only snapshot exported from it (Snapshot)
+ */
+public interface SearchIndex {
+    /**
+     * @param word stem word
+     * @return ID of the word in this index, -1 if the word is not indexed
+     */
+    int getWordID(String word);
+
+    /**
+     * get term weight w(i,j) of all pages containing a word
+     * @param wordID word i, as returned by getWordID
+     * @return pageID j -> w(i,j)
+     */
+    HashMap<Integer, Double> getTermWeights(int wordID);
+
+    /**
+     * get the pages containing every word, with the positions of each word
+     * @param wordIDs word IDs, as returned by getWordID
+     * @return pageID -> {positions of each word, in the order of wordIDs}
+     */
+    HashMap<Integer, int[][]> getCommonPages(int[] wordIDs);
+
+    /**
+     * @param wordID word i, as returned by getWordID
+     * @param pageID page j
+     * @param frequency tf(i,j)
+     * @return w(i,j)
+     */
+    double getTermWeight(int wordID, int pageID, int frequency);
+
+    double getDocLength(int pageID);
+
+    double getPageRank(int pageID);
+
+    /**
+     * @param pageID page ID
+     * @return stem words of the title
+     */
+    Set<String> getTitleWords(int pageID);
+}
@@ -0,0 +1,351 @@
+package retriever;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * read only snapshot of the search index written by SnapshotExport, the file is memory mapped
+ * and read in place with absolute gets, so opening it cost no scan, any number of thread can share
+ * it without lock and every JVM of a host mapping the same file share the same page cache.
+ * a new export replace the file, a snapshot already opened keep reading the old one
+ *
+ * file layout, every number is big endian, every offset is from the beginning of the file:
+ *     header: MAGIC, VERSION, numOfWord, dictionary offset, maxPageID, document table offset
+ *     postings of each word: df, {pageID, position offset, term weight} ..., then at each position offset:
+ *         frequency, {position} ...
+ *     words: UTF-8 bytes of every word
+ *     dictionary, sorted by the bytes of the word: {word offset, word length, postings offset, idf} ...
+ *     document data of each page: url, title, last modification, size, title words, keywords,
+ *         {child pageID}, {parent pageID}
+ *         a string is its length then its UTF-8 bytes, a list is its length then its elements
+ *     document table, indexed by pageID: {doc length, PageRank, maxTF, data offset} ...
+ *         data offset is 0 if there is no such page
+ * the ID of a word in a snapshot is its index in the dictionary.
+ * the term weight of a posting is the one of the database at export (see InvertedIndex.getTermWeights),
+ * so the quantized impacts rank a query the same as DatabaseIndex. the file is smaller than 2 GB
+ */
+public class Snapshot implements SearchIndex {
+    public static final String PATH = "database/searchEngine.snapshot";
+    static final int MAGIC = 0x534e4150;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 24;
+    static final int POSTING_SIZE = 16;
+    static final int DICTIONARY_ENTRY_SIZE = 20;
+    static final int DOCUMENT_ENTRY_SIZE = 24;
+
+    private static Snapshot instance;
+
+    private final MappedByteBuffer buffer;
+    private final int numOfWord;
+    private final int dictionaryOffset;
+    private final int maxPageID;
+    private final int documentTableOffset;
+
+    /**
+     * get the snapshot at PATH, it is mapped on the first call
+     * @return the snapshot, null if there is none
+     */
+    public static synchronized Snapshot getInstance() {
+        if (instance == null && Files.exists(Paths.get(PATH))) {
+            try {
+                instance = new Snapshot(PATH);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * map a snapshot file
+     * @param path path of the file
+     */
+    public Snapshot(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " is not a snapshot of version " + VERSION);
+        }
+        numOfWord = buffer.getInt(8);
+        dictionaryOffset = buffer.getInt(12);
+        maxPageID = buffer.getInt(16);
+        documentTableOffset = buffer.getInt(20);
+    }
+
+    private int compareWord(int entry, byte[] word) {
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        for (int i = 0; i < length && i < word.length; i++) {
+            int diff = (buffer.get(offset + i) & 0xFF) - (word[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - word.length;
+    }
+
+    private int dictionaryEntry(int wordID) {
+        return dictionaryOffset + wordID * DICTIONARY_ENTRY_SIZE;
+    }
+
+    /**
+     * binary search of the dictionary
+     */
+    public int getWordID(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = numOfWord - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareWord(dictionaryEntry(mid), bytes);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private double getIdf(int wordID) {
+        return buffer.getDouble(dictionaryEntry(wordID) + 12);
+    }
+
+    private int postingsOffset(int wordID) {
+        return buffer.getInt(dictionaryEntry(wordID) + 8);
+    }
+
+    private int documentEntry(int pageID) {
+        return documentTableOffset + pageID * DOCUMENT_ENTRY_SIZE;
+    }
+
+    private boolean hasPage(int pageID) {
+        return pageID >= 0 && pageID <= maxPageID && buffer.getInt(documentEntry(pageID) + 20) != 0;
+    }
+
+    private int getMaxTf(int pageID) {
+        return buffer.getInt(documentEntry(pageID) + 16);
+    }
+
+    public HashMap<Integer, Double> getTermWeights(int wordID) {
+        int offset = postingsOffset(wordID);
+        int df = buffer.getInt(offset);
+        HashMap<Integer, Double> weights = new HashMap<>(df * 2);
+        for (int i = 0; i < df; i++) {
+            int posting = offset + 4 + i * POSTING_SIZE;
+            weights.put(buffer.getInt(posting), buffer.getDouble(posting + 8));
+        }
+        return weights;
+    }
+
+    /**
+     * find the first posting not before a page, galloping from the current one
+     * @param offset postings offset of the word
+     * @param from index of the current posting
+     * @param target pageID
+     * @return index of the posting, df if there is none
+     */
+    private int advance(int offset, int from, int target) {
+        int df = buffer.getInt(offset);
+        int step = 1, low = from, high = from;
+        while (high < df && buffer.getInt(offset + 4 + high * POSTING_SIZE) < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, df);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(offset + 4 + mid * POSTING_SIZE) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int[] readPositions(int positionOffset) {
+        int[] positions = new int[buffer.getInt(positionOffset)];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = buffer.getInt(positionOffset + 4 + i * 4);
+        }
+        return positions;
+    }
+
+    /**
+     * the postings of the shortest list lead, the others gallop to its page
+     */
+    public HashMap<Integer, int[][]> getCommonPages(int[] wordIDs) {
+        HashMap<Integer, int[][]> commonPages = new HashMap<>();
+        if (wordIDs.length == 0) {
+            return commonPages;
+        }
+        int[] offsets = new int[wordIDs.length];
+        int[] current = new int[wordIDs.length];
+        int lead = 0;
+        for (int i = 0; i < wordIDs.length; i++) {
+            offsets[i] = postingsOffset(wordIDs[i]);
+            if (buffer.getInt(offsets[i]) < buffer.getInt(offsets[lead])) {
+                lead = i;
+            }
+        }
+        int leadDf = buffer.getInt(offsets[lead]);
+        for (current[lead] = 0; current[lead] < leadDf; current[lead]++) {
+            int target = buffer.getInt(offsets[lead] + 4 + current[lead] * POSTING_SIZE);
+            boolean inAll = true;
+            for (int i = 0; i < wordIDs.length && inAll; i++) {
+                if (i == lead) {
+                    continue;
+                }
+                current[i] = advance(offsets[i], current[i], target);
+                if (current[i] == buffer.getInt(offsets[i])) {
+                    return commonPages;
+                }
+                inAll = buffer.getInt(offsets[i] + 4 + current[i] * POSTING_SIZE) == target;
+            }
+            if (inAll) {
+                int[][] positions = new int[wordIDs.length][];
+                for (int i = 0; i < wordIDs.length; i++) {
+                    positions[i] = readPositions(buffer.getInt(offsets[i] + 4 + current[i] * POSTING_SIZE + 4));
+                }
+                commonPages.put(target, positions);
+            }
+        }
+        return commonPages;
+    }
+
+    public double getTermWeight(int wordID, int pageID, int frequency) {
+        return (double) frequency / getMaxTf(pageID) * getIdf(wordID);
+    }
+
+    public double getDocLength(int pageID) {
+        return hasPage(pageID) ? buffer.getDouble(documentEntry(pageID)) : -1;
+    }
+
+    public double getPageRank(int pageID) {
+        return hasPage(pageID) ? buffer.getDouble(documentEntry(pageID) + 8) : -1;
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * get a field of the document data of a page
+     * @param pageID page ID
+     * @param field index of the field, 0 for url
+     * @return offset of the field, 0 if there is no such page
+     */
+    private int fieldOffset(int pageID, int field) {
+        if (!hasPage(pageID)) {
+            return 0;
+        }
+        int offset = buffer.getInt(documentEntry(pageID) + 20);
+        for (int i = 0; i < field; i++) {
+            offset += 4 + buffer.getInt(offset) * (i < 6 ? 1 : 4);
+        }
+        return offset;
+    }
+
+    private String getField(int pageID, int field) {
+        int offset = fieldOffset(pageID, field);
+        return offset == 0 ? null : readString(offset);
+    }
+
+    public String getUrl(int pageID) {
+        return getField(pageID, 0);
+    }
+
+    public String getTitle(int pageID) {
+        return getField(pageID, 1);
+    }
+
+    public String getLastModificationTime(int pageID) {
+        return getField(pageID, 2);
+    }
+
+    public String getSize(int pageID) {
+        return getField(pageID, 3);
+    }
+
+    public Set<String> getTitleWords(int pageID) {
+        String titleWords = getField(pageID, 4);
+        return titleWords == null ? new HashSet<>() : new HashSet<>(Arrays.asList(titleWords.split(" ")));
+    }
+
+    /**
+     * get the most frequent keywords of a page
+     * @param pageID page ID
+     * @return word -> freq, in decreasing freq
+     */
+    public LinkedHashMap<String, Integer> getSortedWordFreqWordList(int pageID) {
+        LinkedHashMap<String, Integer> keywords = new LinkedHashMap<>();
+        String content = getField(pageID, 5);
+        if (content == null || content.isEmpty()) {
+            return keywords;
+        }
+        String[] words = content.split(" ");
+        for (int i = 0; i + 1 < words.length; i += 2) {
+            keywords.put(words[i], Integer.parseInt(words[i + 1]));
+        }
+        return keywords;
+    }
+
+    private String getLinkedPages(int pageID, int field) {
+        StringBuilder result = new StringBuilder();
+        int offset = fieldOffset(pageID, field);
+        if (offset == 0) {
+            return "";
+        }
+        int numOfPage = buffer.getInt(offset);
+        for (int i = 0; i < numOfPage; i++) {
+            String url = getUrl(buffer.getInt(offset + 4 + i * 4));
+            if (url != null) {
+                result.append(url).append("\n");
+            }
+        }
+        return String.valueOf(result);
+    }
+
+    /**
+     * get a string contain child page of a page by pageID, separate by \n
+     * @param pageID page of
+     * @return the string
+     */
+    public String getChildPages(int pageID) {
+        return getLinkedPages(pageID, 6);
+    }
+
+    /**
+     * get a string contain parent page of a page by pageID, separate by \n
+     * @param pageID page of
+     * @return the string
+     */
+    public String getParentPages(int pageID) {
+        return getLinkedPages(pageID, 7);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Snapshot snapshot = new Snapshot(args.length > 0 ? args[0] : PATH);
+        System.out.println(snapshot.numOfWord + " words, max pageID " + snapshot.maxPageID);
+        for (int pageID = 0; pageID <= Math.min(snapshot.maxPageID, 10); pageID++) {
+            if (snapshot.hasPage(pageID)) {
+                System.out.println(pageID + " " + snapshot.getUrl(pageID) + " " + snapshot.getTitle(pageID) + " " +
+                        snapshot.getDocLength(pageID) + " " + snapshot.getPageRank(pageID));
+            }
+        }
+    }
+}
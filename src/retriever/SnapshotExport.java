@@ -0,0 +1,191 @@
+package retriever;
+
+import indexer.CollectionStatistics;
+import indexer.Indexer;
+import indexer.InvertedIndex;
+import indexer.PageProperty;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * export the database into a read only snapshot (see Snapshot for the layout), run it after
+ * PreProcessor and PageRank so that the doc lengths and PageRanks are up to date.
+ * the snapshot is written into a temporary file then renamed, so a search node never map a
+ * half written file. the offsets of the file are int, an export reaching 2 GB fail
+ */
+class SnapshotExport {
+    /**
+     * number of keywords of a page kept for the result page
+     */
+    private static final int NUM_OF_KEYWORD = 10;
+
+    private final Indexer indexer = Indexer.getInstance();
+    private final InvertedIndex invertedIndex = InvertedIndex.getInstance();
+    private final PageProperty pageProperty = PageProperty.getInstance();
+    private final CollectionStatistics statistics = CollectionStatistics.getInstance();
+    private final PreProcessor preProcessor = PreProcessor.getInstance();
+    private final PageRank pageRank = PageRank.getInstance();
+
+    /**
+     * @return the number of bytes written, which is the offset of the next byte
+     * @throws IOException if the snapshot is too large for int offsets, DataOutputStream.size then stop counting
+     */
+    private static int offset(DataOutputStream out) throws IOException {
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IOException("the snapshot reached " + Integer.MAX_VALUE + " bytes, the limit of its offsets");
+        }
+        return out.size();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeList(DataOutputStream out, List<Integer> list) throws IOException {
+        out.writeInt(list.size());
+        for (int element : list) {
+            out.writeInt(element);
+        }
+    }
+
+    private static List<Integer> toPageIDs(String[] ids, Set<Integer> pageIDs) {
+        List<Integer> result = new ArrayList<>();
+        for (String id : ids == null ? new String[0] : ids) {
+            if (!id.equals("") && pageIDs.contains(Integer.parseInt(id))) {
+                result.add(Integer.parseInt(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param out output placed at the postings of the word
+     * @param pages pageID -> {positions of the word}
+     * @param weights pageID -> term weight
+     */
+    private static void writePostings(DataOutputStream out, TreeMap<Integer, int[]> pages,
+                                      Map<Integer, Double> weights) throws IOException {
+        out.writeInt(pages.size());
+        long positionOffset = offset(out) + (long) pages.size() * Snapshot.POSTING_SIZE;
+        for (Map.Entry<Integer, int[]> entry : pages.entrySet()) {
+            if (positionOffset >= Integer.MAX_VALUE) {
+                throw new IOException("the snapshot reached " + Integer.MAX_VALUE + " bytes, the limit of its offsets");
+            }
+            out.writeInt(entry.getKey());
+            out.writeInt((int) positionOffset);
+            out.writeDouble(weights.getOrDefault(entry.getKey(), 0.0));
+            positionOffset += 4 + entry.getValue().length * 4L;
+        }
+        for (int[] positions : pages.values()) {
+            out.writeInt(positions.length);
+            for (int pos : positions) {
+                out.writeInt(pos);
+            }
+        }
+    }
+
+    private void export(String path) throws IOException {
+        List<String> words = new ArrayList<>();
+        for (String word : indexer.getAllStemWord()) {
+            if (!word.equals("")) {
+                words.add(word);
+            }
+        }
+        words.sort((a, b) -> Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8)));
+        List<Integer> pages = pageProperty.getAllPageID();
+        Set<Integer> pageIDs = new HashSet<>(pages);
+        int maxPageID = pages.isEmpty() ? -1 : Collections.max(pages);
+
+        File temp = new File(path + ".tmp");
+        List<String> exportedWords = new ArrayList<>();
+        List<Integer> postingsOffsets = new ArrayList<>();
+        List<Double> idfs = new ArrayList<>();
+        int dictionaryOffset, documentTableOffset;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(new byte[Snapshot.HEADER_SIZE]);
+            for (String word : words) {
+                int wordID = indexer.searchIDByWord(word, false);
+                TreeMap<Integer, int[]> postings = new TreeMap<>();
+                for (Map.Entry<Integer, int[][]> entry : invertedIndex.getCommonPages(new int[]{wordID}).entrySet()) {
+                    postings.put(entry.getKey(), entry.getValue()[0]);
+                }
+                if (postings.isEmpty()) {
+                    continue;
+                }
+                exportedWords.add(word);
+                postingsOffsets.add(offset(out));
+                idfs.add(statistics.getIdf(wordID));
+                // the weights the database rank with, quantized impacts included
+                writePostings(out, postings, invertedIndex.getTermWeights(wordID));
+            }
+
+            List<Integer> wordOffsets = new ArrayList<>();
+            for (String word : exportedWords) {
+                wordOffsets.add(offset(out));
+                out.write(word.getBytes(StandardCharsets.UTF_8));
+            }
+            dictionaryOffset = offset(out);
+            for (int i = 0; i < exportedWords.size(); i++) {
+                out.writeInt(wordOffsets.get(i));
+                out.writeInt(exportedWords.get(i).getBytes(StandardCharsets.UTF_8).length);
+                out.writeInt(postingsOffsets.get(i));
+                out.writeDouble(idfs.get(i));
+            }
+
+            int[] dataOffsets = new int[maxPageID + 1];
+            for (int pageID : pages) {
+                dataOffsets[pageID] = offset(out);
+                writeString(out, pageProperty.getUrl(pageID));
+                writeString(out, pageProperty.getTitle(pageID));
+                writeString(out, pageProperty.getLastModificationTime(pageID));
+                writeString(out, pageProperty.getSize(pageID));
+                writeString(out, String.join(" ", invertedIndex.getTitleWords(pageID)));
+                StringBuilder keywords = new StringBuilder();
+                int count = 0;
+                for (Map.Entry<String, Integer> entry : invertedIndex.getSortedWordFreqWordList(pageID).entrySet()) {
+                    if (entry.getKey().equals("") || count++ >= NUM_OF_KEYWORD) {
+                        continue;
+                    }
+                    keywords.append(entry.getKey()).append(" ").append(entry.getValue()).append(" ");
+                }
+                writeString(out, keywords.toString().trim());
+                writeList(out, toPageIDs(invertedIndex.getChildIDs(pageID), pageIDs));
+                writeList(out, toPageIDs(preProcessor.getParentIDs(pageID), pageIDs));
+            }
+            documentTableOffset = offset(out);
+            for (int pageID = 0; pageID <= maxPageID; pageID++) {
+                boolean hasPage = dataOffsets[pageID] != 0;
+                out.writeDouble(hasPage ? preProcessor.getDocLength(pageID) : 0);
+                out.writeDouble(hasPage ? pageRank.getPageRank(pageID) : 0);
+                out.writeInt(hasPage ? statistics.getMaxTf(pageID) : 0);
+                out.writeInt(dataOffsets[pageID]);
+            }
+            // the file is mapped with int offsets
+            offset(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.writeInt(Snapshot.MAGIC);
+            file.writeInt(Snapshot.VERSION);
+            file.writeInt(exportedWords.size());
+            file.writeInt(dictionaryOffset);
+            file.writeInt(maxPageID);
+            file.writeInt(documentTableOffset);
+        }
+        Files.move(temp.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("exported " + exportedWords.size() + " words and " + pages.size() + " pages to " + path);
+    }
+
+    public static void main(String[] args) throws IOException {
+        new SnapshotExport().export(args.length > 0 ? args[0] : Snapshot.PATH);
+    }
+}
@@ -0,0 +1,202 @@
+package spider;
+
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * the response of a single GET of a page, everything the spider need to know about a page is
+ * derived from it so a page is downloaded once. the body is only read for html pages (see Fetcher)
+ */
+public class FetchedPage {
+    private static final int NOT_MODIFIED = 304;
+
+    /**
+     * url requested
+     */
+    private final String url;
+    /**
+     * url the body come from after following the redirects
+     */
+    private final String location;
+    /**
+     * HTTP status, -1 if the page could not be fetched
+     */
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final Charset charset;
+
+    private FetchedPage(String url, String location, int status, Map<String, List<String>> headers,
+                        byte[] body, Charset charset) {
+        this.url = url;
+        this.location = location;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.charset = charset;
+    }
+
+    /**
+     * @param url url requested
+     * @param response response after following the redirects, with the body read by Fetcher
+     * @return the page
+     */
+    static FetchedPage of(String url, HttpResponse<byte[]> response) {
+        return of(url, response.uri().toString(), response.statusCode(), response.headers().map(), response.body());
+    }
+
+    /**
+     * @param url url requested
+     * @param location url the body come from after following the redirects
+     * @param status HTTP status
+     * @param headers headers of the response
+     * @param body body of the response
+     * @return the page
+     */
+    static FetchedPage of(String url, String location, int status, Map<String, List<String>> headers, byte[] body) {
+        Map<String, List<String>> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitiveHeaders.putAll(headers);
+        List<String> contentType = caseInsensitiveHeaders.get("Content-Type");
+        return new FetchedPage(url, location, status, Collections.unmodifiableMap(caseInsensitiveHeaders), body,
+                charsetOf(contentType == null || contentType.isEmpty() ? null : contentType.get(0)));
+    }
+
+    /**
+     * @param url url requested
+     * @return a page that could not be fetched
+     */
+    static FetchedPage failed(String url) {
+        return new FetchedPage(url, url, -1, Collections.emptyMap(), new byte[0], StandardCharsets.UTF_8);
+    }
+
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    try {
+                        return Charset.forName(parameter.substring(8).replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getLocation() {
+        return location;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * @param name name of the header, case insensitive
+     * @return first value of the header, null if there is no such header
+     */
+    String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return headers of the response, names are case insensitive
+     */
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return a copy of the body, empty if the page is not html
+     */
+    byte[] getBody() {
+        return body.clone();
+    }
+
+    /**
+     * @return stream over the body, the body is not copied
+     */
+    InputStream openBody() {
+        return new ByteArrayInputStream(body);
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the body decoded by the charset of the page
+     */
+    String getContent() {
+        return new String(body, charset);
+    }
+
+    /**
+     * a page is ok if no need to login and the link is alive
+     */
+    boolean isOk() {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * @return whether a conditional GET found the page not modified
+     */
+    boolean isNotModified() {
+        return status == NOT_MODIFIED;
+    }
+
+    boolean isHtml() {
+        String contentType = getHeader("Content-Type");
+        return contentType != null && contentType.contains("html");
+    }
+
+    /**
+     * @return Last-Modified of the page, the Date of the response if there is none,
+     * the current time if there is no Date either
+     */
+    String getLastModificationTime() {
+        String date = getHeader("Last-Modified");
+        if (date == null) {
+            date = getHeader("Date");
+        }
+        if (date == null) {
+            date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+        }
+        return date;
+    }
+
+    /**
+     * @return SHA-256 of the body, to tell whether the content of a page changed
+     */
+    byte[] getContentHash() {
+        return Hashing.sha256().hashBytes(body).asBytes();
+    }
+
+    /**
+     * @return Content-Length of the page, -1 if unknown
+     */
+    long getContentLength() {
+        String length = getHeader("Content-Length");
+        try {
+            return length == null ? -1 : Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
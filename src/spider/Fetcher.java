@@ -0,0 +1,230 @@
+package spider;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * the HTTP client of the spider, one HttpClient is shared by every fetch so connections are kept alive
+ * and reused, and HTTP/2 is used where the server support it. requests are sent asynchronously, so a
+ * slow host only hold its own requests, and every request has a timeout for its headers and a deadline
+ * for the whole exchange, so a server sending its body slowly does not hold a fetch slot forever.
+ * a request failing with an IO error or a 5xx status is retried a few times with exponential backoff
+ */
+class Fetcher implements PageSource {
+    /**
+     * name of the spider in robots.txt
+     */
+    static final String USER_AGENT = "cse-spider";
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * time allowed for the headers of a response to arrive
+     */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+    /**
+     * time allowed for a whole exchange, body included, a slower one fail
+     */
+    private static final Duration EXCHANGE_TIMEOUT = Duration.ofSeconds(60);
+    private static final int MAX_RETRY = 2;
+    private static final long BACKOFF_MILLIS = 1000;
+    /**
+     * a larger body is truncated
+     */
+    static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+    /**
+     * a body not read is still drained up to this size so the connection can be reused
+     */
+    private static final long MAX_DRAINED_SIZE = 64 * 1024;
+    private static final Fetcher INSTANCE = new Fetcher();
+
+    private final HttpClient client;
+
+    static Fetcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * redirects are followed except from https to http, the proxy of the system properties is used
+     */
+    private Fetcher() {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .proxy(ProxySelector.getDefault())
+                .build();
+    }
+
+    public CompletableFuture<FetchedPage> fetch(String url, String lastModified, String etag) {
+        return fetch(url, lastModified, etag, Fetcher::bodyHandler);
+    }
+
+    public CompletableFuture<FetchedPage> fetchFile(String url) {
+        return fetch(url, null, null, Fetcher::fileBodyHandler);
+    }
+
+    private CompletableFuture<FetchedPage> fetch(String url, String lastModified, String etag,
+                                                 HttpResponse.BodyHandler<byte[]> bodyHandler) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(new URI(url)).timeout(REQUEST_TIMEOUT).GET()
+                    .header("User-Agent", USER_AGENT + "/1.0");
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            request = builder.build();
+        } catch (Exception e) {
+            // the link is malformed or is not a http link
+            return CompletableFuture.completedFuture(FetchedPage.failed(url));
+        }
+        return send(request, bodyHandler, 0).handle((response, e) ->
+                e == null ? FetchedPage.of(url, response) : FetchedPage.failed(url));
+    }
+
+    public boolean isRemote() {
+        return true;
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request,
+                                                         HttpResponse.BodyHandler<byte[]> bodyHandler, int attempt) {
+        CompletableFuture<HttpResponse<byte[]>> exchange = client.sendAsync(request, bodyHandler);
+        CompletableFuture<HttpResponse<byte[]>> deadline = exchange.copy()
+                .orTimeout(EXCHANGE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        // the body subscriber stop at the same deadline, cancelling abort the exchange since JDK 16
+        deadline.whenComplete((response, e) -> {
+            if (e instanceof TimeoutException) {
+                exchange.cancel(true);
+            }
+        });
+        // a timeout is not an IO error, a server too slow is not asked again
+        return deadline
+                .handle((response, e) -> {
+                    boolean retry = attempt < MAX_RETRY &&
+                            (e != null ? isIOException(e) : response.statusCode() >= 500);
+                    if (!retry) {
+                        return e == null ? CompletableFuture.completedFuture(response)
+                                : CompletableFuture.<HttpResponse<byte[]>>failedFuture(e);
+                    }
+                    long delay = BACKOFF_MILLIS << attempt;
+                    return CompletableFuture.supplyAsync(() -> request,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(r -> send(r, bodyHandler, attempt + 1));
+                })
+                .thenCompose(future -> future);
+    }
+
+    private static boolean isIOException(Throwable e) {
+        return e instanceof IOException || (e instanceof CompletionException && e.getCause() instanceof IOException);
+    }
+
+    /**
+     * only the body of a html page without error is read, a large body not read is cancelled
+     */
+    private static HttpResponse.BodySubscriber<byte[]> bodyHandler(HttpResponse.ResponseInfo info) {
+        String contentType = info.headers().firstValue("Content-Type").orElse(null);
+        if (info.statusCode() < 400 && contentType != null && contentType.contains("html")) {
+            return new LimitedBody(MAX_BODY_SIZE);
+        }
+        long length = info.headers().firstValueAsLong("Content-Length").orElse(Long.MAX_VALUE);
+        return length <= MAX_DRAINED_SIZE ? HttpResponse.BodySubscribers.replacing(new byte[0]) : new LimitedBody(0);
+    }
+
+    /**
+     * the body of a file without error is read whatever its type
+     */
+    private static HttpResponse.BodySubscriber<byte[]> fileBodyHandler(HttpResponse.ResponseInfo info) {
+        if (info.statusCode() < 400) {
+            return new LimitedBody(MAX_BODY_SIZE);
+        }
+        return bodyHandler(info);
+    }
+
+    /**
+     * collect at most limit bytes of a body, the rest of the body is cancelled, as well as a body
+     * not complete after EXCHANGE_TIMEOUT
+     */
+    private static class LimitedBody implements HttpResponse.BodySubscriber<byte[]> {
+        private final int limit;
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private byte[] bytes = new byte[0];
+        private int length;
+        private Flow.Subscription subscription;
+
+        private LimitedBody(int limit) {
+            this.limit = limit;
+            body.orTimeout(EXCHANGE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).whenComplete((bytes, e) -> {
+                if (e != null) {
+                    cancel();
+                }
+            });
+        }
+
+        private synchronized void cancel() {
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                this.subscription = subscription;
+            }
+            if (limit == 0 || body.isDone()) {
+                subscription.cancel();
+                body.complete(new byte[0]);
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        public void onNext(List<ByteBuffer> buffers) {
+            if (body.isDone()) {
+                // timed out
+                subscription.cancel();
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                int n = Math.min(buffer.remaining(), limit - length);
+                if (length + n > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.min(limit, Math.max(length + n, bytes.length * 2)));
+                }
+                buffer.get(bytes, length, n);
+                length += n;
+            }
+            if (length == limit) {
+                subscription.cancel();
+                onComplete();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        public void onComplete() {
+            body.complete(Arrays.copyOf(bytes, length));
+        }
+    }
+}
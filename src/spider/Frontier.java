@@ -0,0 +1,249 @@
+package spider;
+
+import indexer.Database;
+import org.rocksdb.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * canonical links (see URLCanonicalizer) waiting to be fetched, kept in two column families of the database so the crawl resume
+ * where it stopped, even after a crash:
+ *     frontier: priority (4 bytes) + sequence (8 bytes) -> url, so links come out by priority
+ *         then in the order they were added
+ *     seenURL: every link ever added, so a link is queued only once (see SeenURLs)
+ *     frontierSequence: SEQUENCE_KEY -> next sequence, written with the links so a start need no scan
+ * a link is not deleted when it is polled but only when the page is done, in the same batch as the
+ * changes of the page and its links, so a page being fetched during a crash is fetched again.
+ * only the thread running BFS use it
+ */
+class Frontier {
+    private static final int KEY_SIZE = 12;
+    private static final byte[] SEQUENCE_KEY = "sequence".getBytes(StandardCharsets.UTF_8);
+    private static final Frontier INSTANCE = new Frontier();
+
+    private final Database database;
+    private final RocksDB db;
+    private final ColumnFamilyHandle frontier;
+    private final ColumnFamilyHandle sequenceHandle;
+    private final SeenURLs seen;
+    /**
+     * keys of the links polled but not yet removed
+     */
+    private final Set<ByteBuffer> polled = new HashSet<>();
+    /**
+     * no link in the frontier is before this key, polling seek to it to skip the deleted links
+     */
+    private byte[] head = new byte[KEY_SIZE];
+    private long sequence;
+
+    /**
+     * a link in the frontier
+     */
+    static class Entry {
+        private final byte[] key;
+        private final String url;
+
+        private Entry(byte[] key, String url) {
+            this.key = key;
+            this.url = url;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        int getPriority() {
+            return ByteBuffer.wrap(key).getInt();
+        }
+    }
+
+    static Frontier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * continue the sequence saved with the last links added, a frontier saved without it is scanned once
+     * for its last link
+     */
+    private Frontier() {
+        database = Database.getInstance();
+        db = database.getDB();
+        frontier = database.getHandle(Database.Family.frontier);
+        sequenceHandle = database.getHandle(Database.Family.frontierSequence);
+        seen = new SeenURLs(database);
+        byte[] saved = null;
+        try {
+            saved = db.get(sequenceHandle, SEQUENCE_KEY);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+        if (saved != null) {
+            sequence = ByteBuffer.wrap(saved).getLong();
+            return;
+        }
+        try (RocksIterator it = db.newIterator(frontier)) {
+            for (it.seekToFirst(); it.isValid(); it.next()) {
+                sequence = Math.max(sequence, ByteBuffer.wrap(it.key()).getLong(4) + 1);
+            }
+        }
+    }
+
+    /**
+     * @param url the link
+     * @return whether the link has ever been added
+     */
+    boolean isSeen(String url) {
+        return seen.contains(url);
+    }
+
+    /**
+     * add a link never added before, nothing is written until the batch is committed
+     * @param url the link
+     * @param priority smaller is fetched first, must not be negative
+     * @param batch batch committing the changes of the page the link come from
+     * @return false if the link has been added before
+     */
+    boolean add(String url, int priority, WriteBatch batch) {
+        if (isSeen(url)) {
+            return false;
+        }
+        try {
+            seen.add(url, priority, batch);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return false;
+        }
+        addAgain(url, priority, batch);
+        return true;
+    }
+
+    /**
+     * add a link to fetch it once more even if it has been added before, nothing is written until
+     * the batch is committed
+     * @param url the link
+     * @param priority smaller is fetched first, must not be negative
+     * @param batch batch committing the link
+     */
+    void addAgain(String url, int priority, WriteBatch batch) {
+        byte[] key = ByteBuffer.allocate(KEY_SIZE).putInt(priority).putLong(sequence++).array();
+        try {
+            batch.put(frontier, key, url.getBytes(StandardCharsets.UTF_8));
+            batch.put(sequenceHandle, SEQUENCE_KEY, ByteBuffer.allocate(8).putLong(sequence).array());
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (Arrays.compareUnsigned(key, head) < 0) {
+            head = key;
+        }
+    }
+
+    /**
+     * add the links of a collection never added before
+     * @param urls the links
+     * @param priority smaller is fetched first
+     */
+    void addAll(Collection<String> urls, int priority) {
+        try (WriteBatch batch = new WriteBatch()) {
+            for (String url : new LinkedHashSet<>(urls)) {
+                add(url, priority, batch);
+            }
+            database.commit(batch);
+            committed();
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * take the links of highest priority that are not polled yet, they stay in the frontier until removed
+     * @param n maximum number of link
+     * @return the links
+     */
+    List<Entry> poll(int n) {
+        List<Entry> entries = new ArrayList<>();
+        try (RocksIterator it = db.newIterator(frontier)) {
+            it.seek(head);
+            if (it.isValid()) {
+                head = it.key();
+            }
+            for (; it.isValid() && entries.size() < n; it.next()) {
+                byte[] key = it.key();
+                if (polled.add(ByteBuffer.wrap(key))) {
+                    entries.add(new Entry(key, new String(it.value(), StandardCharsets.UTF_8)));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * remove a polled link once its page is done, nothing is written until the batch is committed
+     * @param entry the link
+     * @param batch batch committing the changes of the page
+     */
+    void remove(Entry entry, WriteBatch batch) {
+        try {
+            batch.delete(frontier, entry.key);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * call it after a batch adding links is committed
+     */
+    void committed() {
+        seen.committed();
+    }
+
+    /**
+     * forget a polled link, call it after the batch removing it is committed, or to poll it again
+     * @param entry the link
+     */
+    void release(Entry entry) {
+        polled.remove(ByteBuffer.wrap(entry.key));
+    }
+
+    /**
+     * save the state kept in memory, so the next run does not rebuild it
+     */
+    void checkpoint() {
+        seen.save();
+    }
+
+    /**
+     * @return estimated number of link in the frontier
+     */
+    long size() {
+        try {
+            return db.getLongProperty(frontier, "rocksdb.estimate-num-keys");
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * @return whether no link is in the frontier, polled or not
+     */
+    boolean isEmpty() {
+        try (RocksIterator it = db.newIterator(frontier)) {
+            it.seek(head);
+            return !it.isValid();
+        }
+    }
+
+    /**
+     * show the links of the frontier in priority order
+     */
+    public static void main(String[] args) {
+        Frontier frontier = getInstance();
+        System.out.println(frontier.size() + " links, " + frontier.seen.approximateSize() + " links seen");
+        for (Entry entry : frontier.poll(args.length > 0 ? Integer.parseInt(args[0]) : 20)) {
+            System.out.println(entry.getPriority() + " " + entry.getUrl());
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package spider;
+
+import indexer.Database;
+import org.rocksdb.*;
+import util.URLCanonicalizer;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * robots.txt and sitemaps of every host, fetched once and cached for TTL in memory and in the database,
+ * so a restarted crawl does not fetch them again:
+ *     hostMetadata: origin ("https://host:port") -> fetch time (8 bytes) + HTTP status (4 bytes) + robots.txt
+ *     sitemapLastmod: canonical url -> lastmod of the page in a sitemap, 8 bytes
+ * when the robots.txt of a host is fetched its sitemaps are read too (/sitemap.xml if it list none):
+ * their pages are handed to the thread running BFS to be added to the frontier (see takeDiscovered),
+ * and their lastmod let RecrawlScheduler skip the pages not changed since their last fetch.
+ * a missing robots.txt (4xx) allow everything, one that cannot be fetched (5xx or network error)
+ * disallow everything until it is fetched again after ERROR_TTL: the pages of the host are deferred
+ * meanwhile, not dropped (see Spider.fetch). a robots.txt missing from a source other than the web,
+ * e.g. an archive written before robots.txt was fetched, allow everything.
+ * these few requests per host per day do not go through the politeness limits
+ */
+class HostMetadata {
+    private static final HostMetadata INSTANCE = new HostMetadata();
+    private static final long TTL = TimeUnit.DAYS.toMillis(1);
+    private static final long ERROR_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final int NOT_FOUND = 404;
+    /**
+     * maximum number of sitemap read per host, an index and the sitemaps it list
+     */
+    private static final int MAX_SITEMAPS = 16;
+    /**
+     * maximum number of url of a sitemap, as the protocol
+     */
+    private static final int MAX_SITEMAP_URLS = 50_000;
+
+    private final RocksDB db;
+    private final ColumnFamilyHandle metadataHandle;
+    private final ColumnFamilyHandle lastmodHandle;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+    /**
+     * canonical urls found in sitemaps, not added to the frontier yet
+     */
+    private final Queue<String> discovered = new ConcurrentLinkedQueue<>();
+
+    private static class Host {
+        private final CompletableFuture<RobotsRules> rules;
+        private volatile long expiry;
+
+        private Host(CompletableFuture<RobotsRules> rules, long expiry) {
+            this.rules = rules;
+            this.expiry = expiry;
+        }
+    }
+
+    static HostMetadata getInstance() {
+        return INSTANCE;
+    }
+
+    private HostMetadata() {
+        Database database = Database.getInstance();
+        db = database.getDB();
+        metadataHandle = database.getHandle(Database.Family.hostMetadata);
+        lastmodHandle = database.getHandle(Database.Family.sitemapLastmod);
+    }
+
+    /**
+     * @param url a link
+     * @return scheme, host and port of the link, null if it is malformed
+     */
+    private static String origin(String url) {
+        try {
+            URL link = new URL(url);
+            return link.getProtocol() + "://" + link.getAuthority();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param url a link
+     * @return path and query of the link, as matched by robots.txt rules
+     */
+    private static String path(String url) {
+        try {
+            String file = new URL(url).getFile();
+            return file.isEmpty() ? "/" : file;
+        } catch (MalformedURLException e) {
+            return "/";
+        }
+    }
+
+    private static RobotsRules toRules(int status, String robots) {
+        if (status >= 200 && status < 300) {
+            return RobotsRules.parse(robots);
+        }
+        return status >= 400 && status < 500 ? RobotsRules.ALLOW_ALL : RobotsRules.DISALLOW_ALL;
+    }
+
+    private static long ttl(int status) {
+        return status >= 200 && status < 500 ? TTL : ERROR_TTL;
+    }
+
+    /**
+     * @param url a link
+     * @param source where robots.txt and the sitemaps are fetched from if they are not cached
+     * @return completed with the robots.txt rules of the host of the link
+     */
+    CompletableFuture<RobotsRules> getRules(String url, PageSource source) {
+        String origin = origin(url);
+        if (origin == null) {
+            return CompletableFuture.completedFuture(RobotsRules.ALLOW_ALL);
+        }
+        long now = System.currentTimeMillis();
+        Host host = hosts.get(origin);
+        if (host != null && now < host.expiry) {
+            return host.rules;
+        }
+        synchronized (this) {
+            host = hosts.get(origin);
+            if (host == null || now >= host.expiry) {
+                host = host == null ? load(origin) : null;
+                if (host == null || now >= host.expiry) {
+                    host = fetch(origin, source);
+                }
+                hosts.put(origin, host);
+            }
+        }
+        return host.rules;
+    }
+
+    /**
+     * @param url a link
+     * @return whether the robots.txt of the host is known and disallow the link, a robots.txt that
+     * cannot be fetched does not disallow it for good
+     */
+    boolean isDisallowed(String url) {
+        String origin = origin(url);
+        Host host = origin == null ? null : hosts.get(origin);
+        RobotsRules rules = host == null ? null : host.rules.getNow(null);
+        return rules != null && rules != RobotsRules.DISALLOW_ALL && !rules.isAllowed(path(url));
+    }
+
+    /**
+     * @param url a link
+     * @param rules robots.txt rules of the host of the link
+     * @return whether the rules allow the link
+     */
+    static boolean isAllowed(String url, RobotsRules rules) {
+        return rules.isAllowed(path(url));
+    }
+
+    /**
+     * @return the metadata saved in the database, null if there is none
+     */
+    private Host load(String origin) {
+        try {
+            byte[] value = db.get(metadataHandle, origin.getBytes(StandardCharsets.UTF_8));
+            if (value == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            long fetchedAt = buffer.getLong();
+            int status = buffer.getInt();
+            String robots = new String(value, 12, value.length - 12, StandardCharsets.UTF_8);
+            return new Host(CompletableFuture.completedFuture(toRules(status, robots)), fetchedAt + ttl(status));
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * fetch robots.txt then the sitemaps, the metadata is saved once the sitemaps are read
+     */
+    private Host fetch(String origin, PageSource source) {
+        long fetchedAt = System.currentTimeMillis();
+        String url = origin + "/robots.txt";
+        CompletableFuture<FetchedPage> robots = source.fetchFile(url).thenApply(page -> !source.isRemote()
+                && page.getStatus() == -1 ? FetchedPage.of(url, url, NOT_FOUND, Collections.emptyMap(), new byte[0]) : page);
+        CompletableFuture<RobotsRules> rules = robots.thenApply(page -> toRules(page.getStatus(), page.getContent()));
+        Host host = new Host(rules, fetchedAt + TTL);
+        robots.thenAccept(page -> host.expiry = fetchedAt + ttl(page.getStatus()));
+        rules.thenCompose(robotsRules -> {
+            if (robotsRules == RobotsRules.DISALLOW_ALL) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<String> sitemaps = robotsRules.getSitemaps().isEmpty()
+                    ? Collections.singletonList(origin + "/sitemap.xml") : robotsRules.getSitemaps();
+            AtomicInteger budget = new AtomicInteger(MAX_SITEMAPS);
+            return CompletableFuture.allOf(sitemaps.stream()
+                    .map(sitemap -> readSitemap(sitemap, source, budget)).toArray(CompletableFuture[]::new));
+        }).whenComplete((v, e) -> {
+            if (e != null) {
+                e.printStackTrace();
+            }
+            save(origin, fetchedAt, robots.join());
+        });
+        return host;
+    }
+
+    /**
+     * read a sitemap and the sitemaps it list
+     * @param budget number of sitemap that can still be read for the host
+     */
+    private CompletableFuture<Void> readSitemap(String url, PageSource source, AtomicInteger budget) {
+        if (budget.getAndDecrement() <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return source.fetchFile(url).thenCompose(page -> {
+            if (!page.isOk()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Sitemap sitemap = Sitemap.parse(page.getBody(), MAX_SITEMAP_URLS);
+            record(sitemap.getPages());
+            return CompletableFuture.allOf(sitemap.getSitemaps().stream()
+                    .map(child -> readSitemap(child, source, budget)).toArray(CompletableFuture[]::new));
+        });
+    }
+
+    /**
+     * keep the pages of a sitemap for the frontier and save their lastmod
+     */
+    private void record(List<Sitemap.Entry> pages) {
+        URLCanonicalizer canonicalizer = URLCanonicalizer.getInstance();
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Sitemap.Entry page : pages) {
+                String url = canonicalizer.canonicalize(page.getUrl());
+                discovered.add(url);
+                if (page.getLastModified() != -1) {
+                    batch.put(lastmodHandle, url.getBytes(StandardCharsets.UTF_8),
+                            ByteBuffer.allocate(8).putLong(page.getLastModified()).array());
+                }
+            }
+            Database.getInstance().commit(batch);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void save(String origin, long fetchedAt, FetchedPage robots) {
+        byte[] content = robots.isOk() ? robots.getContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        try {
+            db.put(metadataHandle, origin.getBytes(StandardCharsets.UTF_8), ByteBuffer.allocate(12 + content.length)
+                    .putLong(fetchedAt).putInt(robots.getStatus()).put(content).array());
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the urls found in sitemaps since the last call, to add to the frontier
+     */
+    List<String> takeDiscovered() {
+        List<String> urls = new ArrayList<>();
+        for (String url = discovered.poll(); url != null; url = discovered.poll()) {
+            urls.add(url);
+        }
+        return urls;
+    }
+
+    /**
+     * @param url canonical url of a page
+     * @return lastmod of the page in the sitemap of its host, -1 if unknown
+     */
+    long getLastModified(String url) {
+        try {
+            byte[] value = db.get(lastmodHandle, url.getBytes(StandardCharsets.UTF_8));
+            return value == null ? -1 : ByteBuffer.wrap(value).getLong();
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package spider;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * politeness limits applied to each host separately: at most maxConnections requests in flight,
+ * and a token bucket refilled at requestsPerSecond (burst of maxConnections) so a web server never
+ * see more than that rate from the spider however many request are sent at the same time.
+ * a host asking for a Crawl-delay in its robots.txt get at most one request per delay, without burst.
+ * waiting for a host hold no thread, so a host at its limits never delay the requests to the others
+ */
+class HostPoliteness {
+    private final double requestsPerSecond;
+    private final int maxConnections;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    private class Host {
+        private int connections = maxConnections;
+        /**
+         * requests waiting for a connection, in arrival order
+         */
+        private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+        private double tokens = maxConnections;
+        private long lastRefill = System.nanoTime();
+        private double rate = requestsPerSecond;
+        private double burst = maxConnections;
+
+        private synchronized CompletableFuture<Void> takeConnection() {
+            CompletableFuture<Void> connection = new CompletableFuture<>();
+            if (connections > 0) {
+                connections--;
+                connection.complete(null);
+            } else {
+                waiting.add(connection);
+            }
+            return connection;
+        }
+
+        private void releaseConnection() {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    connections++;
+                }
+            }
+            if (next != null) {
+                next.complete(null);
+            }
+        }
+
+        /**
+         * take a token if there is one
+         * @return nanoseconds to wait for the next token, 0 if a token was taken
+         */
+        private synchronized long take() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) ((1 - tokens) / rate * 1e9));
+        }
+
+        private synchronized void setCrawlDelay(double seconds) {
+            rate = seconds > 0 ? Math.min(requestsPerSecond, 1 / seconds) : requestsPerSecond;
+            burst = seconds > 0 ? 1 : maxConnections;
+            tokens = Math.min(tokens, burst);
+        }
+    }
+
+    /**
+     * @param requestsPerSecond average number of request per second to a host
+     * @param maxConnections maximum number of request in flight to a host
+     */
+    HostPoliteness(double requestsPerSecond, int maxConnections) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * wait until a request can be sent to a host, release must be called once the request is done
+     * @param host host name
+     * @return completed when the request can be sent
+     */
+    CompletableFuture<Void> acquire(String host) {
+        Host limit = hosts.computeIfAbsent(host, name -> new Host());
+        return limit.takeConnection().thenCompose(v -> takeToken(limit));
+    }
+
+    private static CompletableFuture<Void> takeToken(Host limit) {
+        long wait = limit.take();
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+                .thenCompose(v -> takeToken(limit));
+    }
+
+    /**
+     * @param host host name
+     * @param seconds Crawl-delay of the robots.txt of the host, 0 if there is none
+     */
+    void setCrawlDelay(String host, double seconds) {
+        hosts.computeIfAbsent(host, name -> new Host()).setCrawlDelay(seconds);
+    }
+
+    /**
+     * @param host host name given to acquire
+     */
+    void release(String host) {
+        hosts.get(host).releaseConnection();
+    }
+}
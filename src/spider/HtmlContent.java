@@ -0,0 +1,135 @@
+package spider;
+
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.nodes.TextNode;
+import org.htmlparser.util.ParserException;
+import org.htmlparser.util.Translate;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * title, words and links of a html page, extracted together by one pass of the htmlparser Lexer over
+ * the body: the nodes are read one by one and dropped, no tree and no copy of the document is built.
+ * the text of script and style is skipped, like StringBean does
+ */
+class HtmlContent {
+    private static final String NO_TITLE = "NoTitle";
+
+    private final String title;
+    private final List<String> words;
+    private final List<String> links;
+    private final int numOfChar;
+
+    private HtmlContent(String title, List<String> words, List<String> links, int numOfChar) {
+        this.title = title;
+        this.words = Collections.unmodifiableList(words);
+        this.links = Collections.unmodifiableList(links);
+        this.numOfChar = numOfChar;
+    }
+
+    /**
+     * @param page a fetched html page, relative links are resolved against its location
+     * @return the content of the page, empty if it cannot be parsed
+     */
+    static HtmlContent extract(FetchedPage page) {
+        StringBuilder title = null;
+        boolean inTitle = false;
+        List<String> words = new ArrayList<>();
+        List<String> links = new ArrayList<>();
+        int numOfChar = 0;
+        try {
+            Page content = new Page(page.openBody(), page.getCharset().name());
+            content.setUrl(page.getLocation());
+            Lexer lexer = new Lexer(content);
+            for (Node node = lexer.nextNode(); node != null; node = lexer.nextNode()) {
+                if (node instanceof TextNode) {
+                    String text = node.getText();
+                    if (inTitle) {
+                        title.append(text);
+                    }
+                    StringTokenizer st = new StringTokenizer(Translate.decode(text).replace('\u00a0', ' '));
+                    while (st.hasMoreTokens()) {
+                        String word = st.nextToken();
+                        // words are separated by one space when counting the characters
+                        numOfChar += word.length() + (words.isEmpty() ? 0 : 1);
+                        words.add(word);
+                    }
+                } else if (node instanceof Tag) {
+                    Tag tag = (Tag) node;
+                    String name = tag.getTagName();
+                    if (name.equals("TITLE")) {
+                        if (tag.isEndTag()) {
+                            inTitle = false;
+                        } else if (title == null) {
+                            title = new StringBuilder();
+                            inTitle = true;
+                        }
+                    } else if (name.equals("A") && !tag.isEndTag()) {
+                        String href = tag.getAttribute("HREF");
+                        if (href != null) {
+                            addLink(links, content.getAbsoluteURL(href.trim()));
+                        }
+                    } else if ((name.equals("SCRIPT") || name.equals("STYLE")) && !tag.isEndTag()
+                            && !tag.isEmptyXmlTag()) {
+                        lexer.parseCDATA();
+                    }
+                }
+            }
+        } catch (ParserException | UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        String pageTitle = title == null ? NO_TITLE : title.toString().toLowerCase(Locale.ROOT).replace("\n", "");
+        return new HtmlContent(pageTitle, words, links, numOfChar);
+    }
+
+    private static void addLink(List<String> links, String link) {
+        try {
+            URL url = new URL(link);
+            // mailto, javascript and so on cannot be fetched
+            if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+                return;
+            }
+            links.add(url.toString());
+        } catch (MalformedURLException e) {
+            // not a link
+        }
+    }
+
+    /**
+     * @return title in lower case, "NoTitle" if there is none
+     */
+    String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return words of the text of the page in order, entities decoded
+     */
+    List<String> getWords() {
+        return words;
+    }
+
+    /**
+     * @return absolute links of the page in order, not canonicalized
+     */
+    List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * @return number of character of the text of the page, words separated by one space
+     */
+    int getNumOfChar() {
+        return numOfChar;
+    }
+}
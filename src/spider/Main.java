@@ -2,34 +2,79 @@ package spider;
 
 import indexer.InvertedIndex;
 import indexer.PageProperty;
+import org.rocksdb.WriteBatch;
 import util.Converter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class Main {
+    /**
+     * maximum number of indexed page fetched again per hour, the new links are not counted
+     */
+    private static final double RECRAWL_PAGES_PER_HOUR = 600;
 
     private static void removePage(int pageID) {
-        InvertedIndex.getInstance().clearRecord(pageID);
-        PageProperty.getInstance().delEntry(pageID);
+        try (WriteBatch batch = new WriteBatch()) {
+            InvertedIndex.getInstance().clearRecord(pageID, batch);
+            PageProperty.getInstance().delEntry(pageID, batch);
+            InvertedIndex.getInstance().commit(batch);
+        }
     }
 
     /**
      * don't run it again as the db is already here
-     * @param args nothing
+     * @param args nothing to crawl the web,
+     *             "archive dir" to crawl the web and archive every response into WARC files in dir,
+     *             "replay dir" to crawl the WARC files in dir instead of the web
      */
     public static void main(String[] args) {
-        String url = "https://www.cse.ust.hk";;
-        Spider spider1 = new Spider(url);
-        spider1.BFS(100);
-        spider1.printAll("spider_result.txt");
+        PageSource source = Fetcher.getInstance();
+        try {
+            if (args.length == 2 && args[0].equals("archive")) {
+                source = new WarcWriter(source, new File(args[1]));
+            } else if (args.length == 2 && args[0].equals("replay")) {
+                source = new WarcReplay(new File(args[1]));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        String url = "https://www.cse.ust.hk";
+        // links left by the old crawler are moved into the frontier once
+        File remainingQueue = new File("remainingQueue.txt");
+        List<String> links = new ArrayList<>(Collections.singletonList(url));
+        if (remainingQueue.exists()) {
+            links.addAll(Converter.readRemainingQueue(remainingQueue.getPath()));
+        }
+        Spider spider = new Spider(links);
+        spider.setPageSource(source);
+        if (remainingQueue.exists() && !remainingQueue.renameTo(new File("remainingQueue.txt.imported"))) {
+            System.out.println("fail to rename " + remainingQueue);
+        }
+        spider.BFS(100);
+        spider.printAll("spider_result.txt");
 
-//        continue fetch page base on previous not yet fetched child links
-//        can un-comment the following line
-        Spider spider2 = null;
+//        continue fetch page base on the frontier, which is kept in the database
+//        so it can also be stopped and run again. the indexed pages most likely to have changed
+//        are queued again before each round
+        RecrawlScheduler scheduler = new RecrawlScheduler(RECRAWL_PAGES_PER_HOUR);
         for (int i = 0; i < 180; i++) {
-            spider2 = new Spider(Converter.readRemainingQueue("remainingQueue.txt"));
-            spider2.BFS(100);
+            System.out.println(scheduler.schedule() + " pages queued to fetch again");
+            spider.BFS(100);
+        }
+        if (source instanceof WarcWriter) {
+            try {
+                ((WarcWriter) source).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
         System.out.println("printing");
         //printing takes too long since so many page is in the database
-//        spider2.printAll("spider_result.txt");
+//        spider.printAll("spider_result.txt");
     }
 }
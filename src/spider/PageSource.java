@@ -0,0 +1,29 @@
+package spider;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * where the pages come from: the web (Fetcher), or the archives of an earlier crawl (WarcReplay)
+ */
+interface PageSource {
+    /**
+     * GET a page, conditional if the validators of the last fetch are given
+     * @param url link of the page
+     * @param lastModified Last-Modified of the page when it was fetched last time, null if unknown
+     * @param etag ETag of the page when it was fetched last time, null if unknown
+     * @return the page, with status -1 if it could not be fetched
+     */
+    CompletableFuture<FetchedPage> fetch(String url, String lastModified, String etag);
+
+    /**
+     * GET a file whatever its type, e.g. robots.txt or a sitemap
+     * @param url link of the file
+     * @return the file, with status -1 if it could not be fetched
+     */
+    CompletableFuture<FetchedPage> fetchFile(String url);
+
+    /**
+     * @return whether the requests go to the web servers, so the politeness limits apply
+     */
+    boolean isRemote();
+}
@@ -0,0 +1,281 @@
+package spider;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * the part of the web crawled by one of several spider processes, see PartitionedCrawl.
+ * a host belong to one partition, chosen by a consistent hash of its name, so the politeness limits
+ * of a host hold across processes.
+ * links to the other partitions are forwarded through files: a process write the links for partition j
+ * into exchange/to-j/from-i-n.links (written into a temporary file then renamed, so a file is never read
+ * half written), partition j add them to its frontier then delete the file.
+ * a link is forwarded once per process, the receiver ignore the links it has already seen.
+ * the crawl is over once every partition is idle with an empty inbox: a partition with nothing to
+ * fetch write exchange/idle-i holding the number of time it has been idle, and delete it before it
+ * read its inbox again. a partition seeing the same idle files before and after finding every inbox
+ * empty know that nobody read or wrote links in between, since links are forwarded before their
+ * sender become idle, so no link can come any more
+ */
+class Partition {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    /**
+     * minimum time between two listing of the inbox
+     */
+    private static final long RECEIVE_INTERVAL = 200;
+
+    private final int index;
+    private final int numOfPartition;
+    private final File exchange;
+    private final File inbox;
+    /**
+     * links waiting to be written, by destination partition
+     */
+    private final Map<Integer, StringBuilder> outgoing = new HashMap<>();
+    /**
+     * hash of the links already forwarded
+     */
+    private final Set<Long> forwarded = new HashSet<>();
+    /**
+     * files received, deleted by acknowledge
+     */
+    private final List<File> received = new ArrayList<>();
+    private long sequence = System.currentTimeMillis();
+    private long lastReceive;
+    /**
+     * number of time this partition has been idle
+     */
+    private int numOfIdle;
+
+    /**
+     * a link forwarded by another partition
+     */
+    static class Link {
+        private final String url;
+        private final int priority;
+
+        private Link(String url, int priority) {
+            this.url = url;
+            this.priority = priority;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        int getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * @param index index of the partition, from 0
+     * @param numOfPartition number of partition
+     * @param exchange directory shared by the partitions to forward links
+     */
+    Partition(int index, int numOfPartition, File exchange) {
+        this.index = index;
+        this.numOfPartition = numOfPartition;
+        this.exchange = exchange;
+        inbox = inbox(exchange, index);
+        if (!inbox.isDirectory() && !inbox.mkdirs()) {
+            System.out.println("fail to create " + inbox);
+        }
+    }
+
+    private static File inbox(File exchange, int index) {
+        return new File(exchange, "to-" + index);
+    }
+
+    /**
+     * @param url a canonical link
+     * @param numOfPartition number of partition
+     * @return partition of the host of the link, 0 for a malformed link
+     */
+    static int of(String url, int numOfPartition) {
+        try {
+            String host = new URL(url).getHost();
+            return Hashing.consistentHash(HASH.hashUnencodedChars(host), numOfPartition);
+        } catch (MalformedURLException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param url a canonical link
+     * @return whether the link belong to this partition
+     */
+    boolean owns(String url) {
+        return of(url, numOfPartition) == index;
+    }
+
+    /**
+     * keep a link of another partition to write it by the next flush
+     * @param url a canonical link not owned by this partition
+     * @param priority priority of the link in the frontier
+     */
+    void forward(String url, int priority) {
+        if (forwarded.add(HASH.hashUnencodedChars(url).asLong())) {
+            outgoing.computeIfAbsent(of(url, numOfPartition), i -> new StringBuilder())
+                    .append(priority).append('\t').append(url).append('\n');
+        }
+    }
+
+    /**
+     * write the forwarded links, call it after the batch finding them is committed
+     */
+    void flush() {
+        for (Map.Entry<Integer, StringBuilder> entry : outgoing.entrySet()) {
+            File directory = inbox(exchange, entry.getKey());
+            String name = "from-" + index + "-" + sequence++;
+            File temp = new File(directory, name + ".tmp");
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                System.out.println("fail to create " + directory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                writer.write(entry.getValue().toString());
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (!temp.renameTo(new File(directory, name + ".links"))) {
+                System.out.println("fail to rename " + temp);
+            }
+        }
+        outgoing.clear();
+    }
+
+    /**
+     * read the links forwarded to this partition, call acknowledge once they are committed to the frontier
+     * @return the links
+     */
+    List<Link> receive() {
+        List<Link> links = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        if (now - lastReceive < RECEIVE_INTERVAL) {
+            return links;
+        }
+        lastReceive = now;
+        File[] files = inbox.listFiles((dir, name) -> name.endsWith(".links"));
+        if (files == null) {
+            return links;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        links.add(new Link(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab))));
+                    }
+                }
+                received.add(file);
+            } catch (IOException | NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return links;
+    }
+
+    /**
+     * delete the files received, their links are in the frontier
+     */
+    void acknowledge() {
+        for (File file : received) {
+            if (!file.delete()) {
+                System.out.println("fail to delete " + file);
+            }
+        }
+        received.clear();
+    }
+
+    /**
+     * @return whether links are waiting in the inbox
+     */
+    boolean hasIncoming() {
+        return hasIncoming(inbox);
+    }
+
+    private static boolean hasIncoming(File inbox) {
+        String[] names = inbox.list((dir, name) -> name.endsWith(".links"));
+        return names != null && names.length > 0;
+    }
+
+    private File idleFile(int index) {
+        return new File(exchange, "idle-" + index);
+    }
+
+    private void writeIdleFile(String content) {
+        File temp = new File(exchange, "idle-" + index + ".tmp");
+        try {
+            Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), idleFile(index).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * tell the other partitions this one has nothing to fetch, call it after the forwarded links are flushed
+     */
+    void markIdle() {
+        writeIdleFile(String.valueOf(++numOfIdle));
+    }
+
+    /**
+     * tell the other partitions this one is fetching again, call it before receiving links
+     */
+    void markActive() {
+        if (idleFile(index).exists() && !idleFile(index).delete()) {
+            System.out.println("fail to delete " + idleFile(index));
+        }
+    }
+
+    /**
+     * tell the other partitions this one stopped for good, the links forwarded to it are not fetched
+     */
+    void markDone() {
+        writeIdleFile("done");
+    }
+
+    /**
+     * @return content of the idle file of every partition, null if one is active
+     */
+    private List<String> readIdleFiles() {
+        List<String> idle = new ArrayList<>();
+        for (int i = 0; i < numOfPartition; i++) {
+            try {
+                idle.add(new String(Files.readAllBytes(idleFile(i).toPath()), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return whether every partition is idle and no link is waiting in any inbox, the crawl is over
+     */
+    boolean isOver() {
+        List<String> before = readIdleFiles();
+        if (before == null) {
+            return false;
+        }
+        for (int i = 0; i < numOfPartition; i++) {
+            if (hasIncoming(inbox(exchange, i))) {
+                return false;
+            }
+        }
+        return before.equals(readIdleFiles());
+    }
+}
@@ -0,0 +1,180 @@
+package spider;
+
+import util.URLCanonicalizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * crawl with several processes on one machine. the hosts are split into partitions by Partition,
+ * each partition is crawled by a worker process with its own frontier and database (its shard of the
+ * index), archiving every response, and forward the links of other hosts to their partition.
+ * once the workers are done the archives of all workers are replayed into one database by a single
+ * spider, so the page IDs, word IDs and the index are global as if one process crawled every page,
+ * and no ID of a shard has to be translated. the replay does not use the network.
+ * files under the root directory:
+ *     shard-i/        working directory of worker i: its database, its log and a copy of stopwords.txt
+ *     warc/shard-i/   responses fetched by worker i
+ *     exchange/to-i/  links forwarded to worker i
+ *     database/       the global database built by the merge
+ * a worker stop after numOfPage pages (the links forwarded to it afterward are not fetched),
+ * or once every worker has nothing to fetch and no link is waiting in any inbox (see Partition).
+ * the links of a host whose robots.txt cannot be fetched do not count as something to fetch, they are
+ * left in the frontier of the worker
+ */
+public class PartitionedCrawl {
+    private static final long IDLE_WAIT = TimeUnit.SECONDS.toMillis(1);
+    private static final int PAGES_PER_ROUND = 100;
+    private static final int PAGES_PER_MERGE_ROUND = 1000;
+    private static final String STOPWORDS = "stopwords.txt";
+
+    private static File shard(File root, int index) {
+        return new File(root, "shard-" + index);
+    }
+
+    private static File archive(File root, int index) {
+        return new File(new File(root, "warc"), "shard-" + index);
+    }
+
+    /**
+     * prepare a working directory for a process and start it
+     * @param directory working directory of the process
+     * @param args arguments of main
+     * @return the process, its output is written into directory/log.txt
+     */
+    private static Process start(File directory, List<String> args) throws IOException {
+        if (!new File(directory, "database").isDirectory() && !new File(directory, "database").mkdirs()) {
+            throw new IOException("fail to create " + directory);
+        }
+        Files.copy(new File(STOPWORDS).toPath(), new File(directory, STOPWORDS).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        // the class path may be relative to this working directory
+        StringJoiner classPath = new StringJoiner(File.pathSeparator);
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", classPath.toString(), PartitionedCrawl.class.getName()));
+        command.addAll(args);
+        return new ProcessBuilder(command).directory(directory)
+                .redirectErrorStream(true).redirectOutput(new File(directory, "log.txt")).start();
+    }
+
+    /**
+     * start the workers, wait for them then merge their archives
+     */
+    private static void crawl(File root, int numOfWorker, int numOfPage, List<String> seeds)
+            throws IOException, InterruptedException {
+        List<Process> workers = new ArrayList<>();
+        for (int i = 0; i < numOfWorker; i++) {
+            // the idle file of a previous crawl must not end this one
+            new Partition(i, numOfWorker, new File(root, "exchange")).markActive();
+        }
+        for (int i = 0; i < numOfWorker; i++) {
+            List<String> args = new ArrayList<>(Arrays.asList("worker", root.getPath(),
+                    String.valueOf(i), String.valueOf(numOfWorker), String.valueOf(numOfPage)));
+            args.addAll(seeds);
+            Process worker = start(shard(root, i), args);
+            // a worker that crashed must not keep the others waiting for it
+            Partition partition = new Partition(i, numOfWorker, new File(root, "exchange"));
+            worker.onExit().thenRun(partition::markDone);
+            workers.add(worker);
+        }
+        for (int i = 0; i < numOfWorker; i++) {
+            System.out.println("worker " + i + " exit " + workers.get(i).waitFor());
+        }
+        List<String> args = new ArrayList<>(Arrays.asList("merge", root.getPath(), String.valueOf(numOfWorker)));
+        args.addAll(seeds);
+        System.out.println("merge exit " + start(root, args).waitFor());
+    }
+
+    /**
+     * crawl one partition, run in the working directory of the worker
+     */
+    private static void work(File root, int index, int numOfWorker, int numOfPage, List<String> seeds)
+            throws IOException {
+        Partition partition = new Partition(index, numOfWorker, new File(root, "exchange"));
+        List<String> ownSeeds = new ArrayList<>();
+        for (String seed : seeds) {
+            if (partition.owns(URLCanonicalizer.getInstance().canonicalize(seed))) {
+                ownSeeds.add(seed);
+            }
+        }
+        try (WarcWriter archive = new WarcWriter(Fetcher.getInstance(), archive(root, index))) {
+            Spider spider = new Spider(ownSeeds);
+            spider.setPageSource(archive);
+            spider.setPartition(partition);
+            int pageFetched = 0;
+            boolean over = false;
+            try {
+                while (pageFetched < numOfPage && !over) {
+                    pageFetched += spider.BFS(Math.min(PAGES_PER_ROUND, numOfPage - pageFetched));
+                    // links waiting for the robots.txt of their host are not fetched before long, a worker
+                    // with only those is idle, they stay in its frontier if the crawl end meanwhile
+                    boolean idle = Frontier.getInstance().isEmpty() || spider.hasOnlyDeferredLinks();
+                    if (!idle || partition.hasIncoming()) {
+                        continue;
+                    }
+                    // the links found are already forwarded by BFS, wait for links or for the end
+                    partition.markIdle();
+                    while (!partition.hasIncoming() && !(over = partition.isOver())) {
+                        Thread.sleep(IDLE_WAIT);
+                    }
+                    if (!over) {
+                        partition.markActive();
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            if (!over) {
+                partition.markDone();
+            }
+            System.out.println("worker " + index + " fetched " + pageFetched + " pages");
+        }
+    }
+
+    /**
+     * replay the archives of every worker into the database of the root directory, run in the root directory
+     */
+    private static void merge(File root, int numOfWorker, List<String> seeds) throws IOException {
+        List<File> archives = new ArrayList<>();
+        for (int i = 0; i < numOfWorker; i++) {
+            archives.add(archive(root, i));
+        }
+        Spider spider = new Spider(seeds);
+        spider.setPageSource(new WarcReplay(archives));
+        int pageFetched = spider.BFS(PAGES_PER_MERGE_ROUND);
+        // the links of a host whose robots.txt failed during the crawl are deferred by the replay as well
+        while (!Frontier.getInstance().isEmpty() && !spider.hasOnlyDeferredLinks()) {
+            pageFetched += spider.BFS(PAGES_PER_MERGE_ROUND);
+        }
+        System.out.println("merged " + pageFetched + " pages");
+    }
+
+    /**
+     * @param args "crawl root numOfWorker numOfPage seed..." to crawl numOfPage pages per worker from the seeds,
+     *             the working directory must contain stopwords.txt.
+     *             "worker root index numOfWorker numOfPage seed..." and "merge root numOfWorker seed..."
+     *             are started by crawl
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 4 && args[0].equals("crawl")) {
+            List<String> seeds = Arrays.asList(args).subList(4, args.length);
+            crawl(new File(args[1]).getAbsoluteFile(), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    seeds.isEmpty() ? Collections.singletonList("https://www.cse.ust.hk") : seeds);
+        } else if (args.length >= 5 && args[0].equals("worker")) {
+            work(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                    Arrays.asList(args).subList(5, args.length));
+        } else if (args.length >= 3 && args[0].equals("merge")) {
+            merge(new File(args[1]), Integer.parseInt(args[2]), Arrays.asList(args).subList(3, args.length));
+        } else {
+            System.out.println("usage: crawl root numOfWorker numOfPage [seed...]");
+        }
+    }
+}
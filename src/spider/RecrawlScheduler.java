@@ -0,0 +1,132 @@
+package spider;
+
+import indexer.ChangeHistory;
+import indexer.Database;
+import indexer.PageProperty;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * queue the indexed pages to be fetched again, the pages most likely to have changed first.
+ * the rate of change of every page is estimated from its change history (see ChangeHistory),
+ * so a page found changed at most fetches is fetched again much sooner than a page that never change.
+ * at most pagesPerHour pages are queued per hour, as the pages of the highest expected freshness gain:
+ * the probability that the page changed since its last fetch. a page below MIN_GAIN is not worth a fetch.
+ * a page listed with a lastmod in the sitemap of its host is not estimated: it is queued if the
+ * lastmod is after its last fetch, and skipped without any request otherwise.
+ * the queued pages get priority 0, so they are fetched before the new links
+ */
+class RecrawlScheduler {
+    /**
+     * rate of a page fetched once only, a change per week
+     */
+    private static final double DEFAULT_CHANGE_RATE = 1.0 / (7 * 24);
+    /**
+     * a page never found changed is still fetched again, about once a month
+     */
+    private static final double MIN_CHANGE_RATE = 1.0 / (30 * 24);
+    private static final double MIN_GAIN = 0.05;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    /**
+     * a page queued and still not fetched after this time (e.g. a dead link) can be queued again
+     */
+    private static final long SCHEDULE_TIMEOUT = TimeUnit.DAYS.toMillis(1);
+
+    private final PageProperty pageProperty = PageProperty.getInstance();
+    private final Frontier frontier = Frontier.getInstance();
+    private final HostMetadata hostMetadata = HostMetadata.getInstance();
+    private final double pagesPerHour;
+    /**
+     * number of page that can be queued now, at most an hour of budget is saved
+     */
+    private double allowance;
+    private long lastSchedule = System.currentTimeMillis();
+
+    /**
+     * a page and its expected freshness gain
+     */
+    private static class Candidate {
+        private final int pageID;
+        private final double gain;
+
+        private Candidate(int pageID, double gain) {
+            this.pageID = pageID;
+            this.gain = gain;
+        }
+    }
+
+    /**
+     * @param pagesPerHour maximum number of page queued again per hour
+     */
+    RecrawlScheduler(double pagesPerHour) {
+        this.pagesPerHour = pagesPerHour;
+    }
+
+    private static double getChangeRate(ChangeHistory history) {
+        return Math.max(MIN_CHANGE_RATE, history.getChangeRate(DEFAULT_CHANGE_RATE));
+    }
+
+    /**
+     * queue the pages of highest expected freshness gain, as many as the budget allow since the last call
+     * @return number of page queued
+     */
+    int schedule() {
+        long now = System.currentTimeMillis();
+        allowance = Math.min(pagesPerHour, allowance + pagesPerHour * (now - lastSchedule) / HOUR);
+        lastSchedule = now;
+        int numOfPage = (int) allowance;
+        if (numOfPage == 0) {
+            return 0;
+        }
+        // the pages of highest gain, the smallest on top
+        PriorityQueue<Candidate> top = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.gain));
+        for (int pageID : pageProperty.getAllPageID()) {
+            ChangeHistory history = pageProperty.getChangeHistory(pageID);
+            if (history.isScheduled(now, SCHEDULE_TIMEOUT)) {
+                continue;
+            }
+            long lastModified = hostMetadata.getLastModified(pageProperty.getUrl(pageID));
+            double gain = lastModified == -1 ? history.getStaleProbability(now, getChangeRate(history))
+                    : lastModified > history.getLastCheck() ? 1 : 0;
+            if (gain < MIN_GAIN) {
+                continue;
+            }
+            if (top.size() < numOfPage) {
+                top.add(new Candidate(pageID, gain));
+            } else if (gain > top.peek().gain) {
+                top.poll();
+                top.add(new Candidate(pageID, gain));
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>(top);
+        candidates.sort(Comparator.comparingDouble((Candidate c) -> c.gain).reversed());
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Candidate candidate : candidates) {
+                frontier.addAgain(pageProperty.getUrl(candidate.pageID), 0, batch);
+                pageProperty.recordSchedule(candidate.pageID, batch);
+            }
+            Database.getInstance().commit(batch);
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        allowance -= candidates.size();
+        return candidates.size();
+    }
+
+    /**
+     * show the estimated rate of change of the indexed pages
+     */
+    public static void main(String[] args) {
+        PageProperty pageProperty = PageProperty.getInstance();
+        long now = System.currentTimeMillis();
+        for (int pageID : pageProperty.getAllPageID()) {
+            ChangeHistory history = pageProperty.getChangeHistory(pageID);
+            System.out.println(pageID + " " + pageProperty.getUrl(pageID) + ": " + history + ", "
+                    + String.format("%.2f", history.getStaleProbability(now, getChangeRate(history))) + " stale");
+        }
+    }
+}
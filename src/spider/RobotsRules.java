@@ -0,0 +1,160 @@
+package spider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * the rules of a robots.txt (RFC 9309) applying to the spider: the groups naming Fetcher.USER_AGENT,
+ * or the groups of "*" if there is none. a path is allowed unless the longest matching rule is a
+ * Disallow, "*" in a rule match any characters and a final "$" the end of the path.
+ * Crawl-delay and Sitemap are not in the RFC but widely used, they are read as well
+ */
+class RobotsRules {
+    static final RobotsRules ALLOW_ALL = new RobotsRules(Collections.emptyList(), 0, Collections.emptyList());
+    /**
+     * used while the robots.txt of a host cannot be fetched, as the RFC require
+     */
+    static final RobotsRules DISALLOW_ALL = new RobotsRules(
+            Collections.singletonList(new Rule("/", false)), 0, Collections.emptyList());
+
+    private final List<Rule> rules;
+    private final double crawlDelay;
+    private final List<String> sitemaps;
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        private Rule(String path, boolean allow) {
+            StringBuilder regex = new StringBuilder();
+            boolean anchored = path.endsWith("$");
+            String[] parts = (anchored ? path.substring(0, path.length() - 1) : path).split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
+            }
+            if (anchored) {
+                regex.append('$');
+            }
+            pattern = Pattern.compile(regex.toString());
+            length = path.length();
+            this.allow = allow;
+        }
+    }
+
+    private RobotsRules(List<Rule> rules, double crawlDelay, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * @param text content of a robots.txt
+     * @return the rules applying to the spider
+     */
+    static RobotsRules parse(String text) {
+        List<Rule> ownRules = new ArrayList<>(), anyRules = new ArrayList<>();
+        double ownDelay = -1, anyDelay = -1;
+        boolean own = false, any = false, ownGroupFound = false;
+        boolean inAgentLines = false;
+        List<String> sitemaps = new ArrayList<>();
+        for (String line : text.split("\r?\n|\r")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (key.equals("user-agent")) {
+                // consecutive user-agent lines start one group
+                if (!inAgentLines) {
+                    own = any = false;
+                    inAgentLines = true;
+                }
+                String agent = value.toLowerCase(Locale.ROOT);
+                if (agent.equals(Fetcher.USER_AGENT)) {
+                    own = ownGroupFound = true;
+                } else if (agent.equals("*")) {
+                    any = true;
+                }
+                continue;
+            }
+            if (key.equals("sitemap")) {
+                sitemaps.add(value);
+                continue;
+            }
+            inAgentLines = false;
+            if ((key.equals("allow") || key.equals("disallow")) && !value.isEmpty()) {
+                Rule rule = new Rule(value, key.equals("allow"));
+                if (own) {
+                    ownRules.add(rule);
+                }
+                if (any) {
+                    anyRules.add(rule);
+                }
+            } else if (key.equals("crawl-delay")) {
+                try {
+                    double delay = Double.parseDouble(value);
+                    if (own) {
+                        ownDelay = delay;
+                    }
+                    if (any) {
+                        anyDelay = delay;
+                    }
+                } catch (NumberFormatException e) {
+                    // ignored like any invalid line
+                }
+            }
+        }
+        return ownGroupFound ? new RobotsRules(ownRules, Math.max(0, ownDelay), sitemaps)
+                : new RobotsRules(anyRules, Math.max(0, anyDelay), sitemaps);
+    }
+
+    /**
+     * @param path path and query of a url, starting by "/"
+     * @return whether the spider may fetch it
+     */
+    boolean isAllowed(String path) {
+        Rule longest = null;
+        for (Rule rule : rules) {
+            if (rule.pattern.matcher(path).lookingAt()
+                    && (longest == null || rule.length > longest.length || (rule.length == longest.length && rule.allow))) {
+                longest = rule;
+            }
+        }
+        return longest == null || longest.allow;
+    }
+
+    /**
+     * @return seconds to wait between two requests, 0 if not given
+     */
+    double getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    /**
+     * @return urls of the sitemaps of the host
+     */
+    List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    public static void main(String[] args) {
+        RobotsRules rules = parse("User-agent: *\nDisallow: /private/\nAllow: /private/public*.html$\n"
+                + "Crawl-delay: 2\n\nUser-agent: other\nDisallow: /\nSitemap: https://www.cse.ust.hk/sitemap.xml\n");
+        for (String path : new String[]{"/", "/private/a.html", "/private/public1.html", "/private/public1.html?x"}) {
+            System.out.println(path + " " + rules.isAllowed(path));
+        }
+        System.out.println("delay " + rules.getCrawlDelay() + ", sitemaps " + rules.getSitemaps());
+    }
+}
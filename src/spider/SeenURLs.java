@@ -0,0 +1,157 @@
+package spider;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import indexer.Database;
+import org.rocksdb.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * every link ever added to the frontier. the exact set is the seenURL column family, keyed by the
+ * 128 bit hash of the canonical link (see URLCanonicalizer), and a Bloom filter of the same keys is
+ * kept in memory in front of it, so a link never seen (most of the links of a page) cost no database read.
+ * the filter has a fixed size of about -ln(FALSE_POSITIVE_RATE) / ln(2)^2 bits per expected link
+ * (9.6 bits for 1%), it is saved in BLOOM_PATH and deleted as soon as a link is added after the save,
+ * so a filter missing a link is never loaded: it is rebuilt from the column family instead.
+ * the links added by a batch not committed yet are kept in memory, so a batch holding many pages
+ * add a link once
+ */
+class SeenURLs {
+    static final String BLOOM_PATH = "database/seenURL.bloom";
+    /**
+     * size the filter for this number of link, more link only raise the false positive rate
+     */
+    private static final long EXPECTED_URLS = 20_000_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final Database database;
+    private final ColumnFamilyHandle seen;
+    private BloomFilter<byte[]> filter;
+    /**
+     * keys added since the last commit
+     */
+    private final Set<ByteBuffer> uncommitted = new HashSet<>();
+    /**
+     * whether the file of the filter is up to date
+     */
+    private boolean saved;
+
+    /**
+     * load the saved filter, or rebuild it from the column family
+     * @param database the database
+     */
+    SeenURLs(Database database) {
+        this(database, EXPECTED_URLS, FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param database the database
+     * @param expectedURLs number of link the filter is sized for
+     * @param falsePositiveRate false positive rate of the filter at expectedURLs links
+     */
+    SeenURLs(Database database, long expectedURLs, double falsePositiveRate) {
+        this.database = database;
+        seen = database.getHandle(Database.Family.seenURL);
+        File file = new File(BLOOM_PATH);
+        if (file.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                filter = BloomFilter.readFrom(in, Funnels.byteArrayFunnel());
+                saved = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (filter == null) {
+            filter = BloomFilter.create(Funnels.byteArrayFunnel(), expectedURLs, falsePositiveRate);
+            try (RocksIterator it = database.getDB().newIterator(seen)) {
+                for (it.seekToFirst(); it.isValid(); it.next()) {
+                    filter.put(it.key());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param url the link
+     * @return key of the link in the column family and in the filter
+     */
+    static byte[] key(String url) {
+        return HASH.hashString(url, StandardCharsets.UTF_8).asBytes();
+    }
+
+    /**
+     * @param url the link
+     * @return whether the link has been added
+     */
+    boolean contains(String url) {
+        byte[] key = key(url);
+        if (!filter.mightContain(key)) {
+            return false;
+        }
+        if (uncommitted.contains(ByteBuffer.wrap(key))) {
+            return true;
+        }
+        try {
+            return database.getDB().get(seen, key) != null;
+        } catch (RocksDBException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * add a link, nothing is written to the column family until the batch is committed.
+     * the filter is changed at once, a batch never committed only cost a database read later
+     * @param url the link
+     * @param priority priority of the link in the frontier
+     * @param batch batch committing the changes of the page the link come from
+     */
+    void add(String url, int priority, WriteBatch batch) throws RocksDBException {
+        byte[] key = key(url);
+        batch.put(seen, key, ByteBuffer.allocate(4).putInt(priority).array());
+        filter.put(key);
+        uncommitted.add(ByteBuffer.wrap(key));
+        if (saved) {
+            saved = !new File(BLOOM_PATH).delete();
+        }
+    }
+
+    /**
+     * call it after the batches adding links are committed
+     */
+    void committed() {
+        uncommitted.clear();
+    }
+
+    /**
+     * save the filter if it changed since the last save, it is written into a temporary file then renamed
+     */
+    void save() {
+        if (saved) {
+            return;
+        }
+        File temp = new File(BLOOM_PATH + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            filter.writeTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        saved = temp.renameTo(new File(BLOOM_PATH));
+    }
+
+    /**
+     * @return estimated number of link added
+     */
+    long approximateSize() {
+        return filter.approximateElementCount();
+    }
+}
@@ -0,0 +1,128 @@
+package spider;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * a sitemap (sitemaps.org), either a urlset listing pages with their lastmod, or a sitemapindex
+ * listing other sitemaps. it is read by StAX so a large sitemap is not built into a tree,
+ * a gzipped sitemap is decompressed
+ */
+class Sitemap {
+    private final List<Entry> pages;
+    private final List<String> sitemaps;
+
+    /**
+     * a page of a sitemap
+     */
+    static class Entry {
+        private final String url;
+        private final long lastModified;
+
+        private Entry(String url, long lastModified) {
+            this.url = url;
+            this.lastModified = lastModified;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return lastmod in milliseconds since the epoch, -1 if not given
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private Sitemap(List<Entry> pages, List<String> sitemaps) {
+        this.pages = pages;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * @param body body of a sitemap, gzipped or not
+     * @param maxUrls a longer sitemap is cut
+     * @return the sitemap, empty if it cannot be parsed
+     */
+    static Sitemap parse(byte[] body, int maxUrls) {
+        List<Entry> pages = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // a sitemap never need a DTD, refusing them avoid external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = body.length > 1 && (body[0] & 0xFF) == 0x1f && (body[1] & 0xFF) == 0x8b
+                ? new GZIPInputStream(new ByteArrayInputStream(body)) : new ByteArrayInputStream(body)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String loc = null, lastmod = null;
+            while (reader.hasNext() && pages.size() + sitemaps.size() < maxUrls) {
+                if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("loc")) {
+                        loc = reader.getElementText().trim();
+                    } else if (name.equals("lastmod")) {
+                        lastmod = reader.getElementText().trim();
+                    }
+                } else if (reader.getEventType() == XMLStreamReader.END_ELEMENT && loc != null) {
+                    String name = reader.getLocalName();
+                    if (name.equals("url")) {
+                        pages.add(new Entry(loc, parseDate(lastmod)));
+                    } else if (name.equals("sitemap")) {
+                        sitemaps.add(loc);
+                    } else {
+                        continue;
+                    }
+                    loc = lastmod = null;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException | IOException e) {
+            // not a sitemap, e.g. a html error page, the entries read so far are kept
+        }
+        return new Sitemap(pages, sitemaps);
+    }
+
+    /**
+     * @param date W3C datetime, e.g. "2020-01-31" or "2020-01-31T10:00:00+08:00"
+     * @return milliseconds since the epoch, -1 if it cannot be parsed
+     */
+    private static long parseDate(String date) {
+        if (date == null) {
+            return -1;
+        }
+        try {
+            if (date.length() == 10) {
+                return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return pages of a urlset
+     */
+    List<Entry> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return sitemaps of a sitemapindex
+     */
+    List<String> getSitemaps() {
+        return sitemaps;
+    }
+}
@@ -2,114 +2,526 @@ package spider;
 
 import indexer.Indexer;
 import indexer.InvertedIndex;
+import indexer.NearDuplicates;
 import indexer.PageProperty;
+import org.rocksdb.WriteBatch;
+import util.URLCanonicalizer;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * a crawl is a pipeline of three stages, sized separately and connected by bounded queues:
+ *     fetch: up to maxFetches pages are fetched asynchronously by the Fetcher, holding no thread
+ *     parse: numOfParser threads extract, tokenize and stem the fetched pages
+ *     index: the thread running BFS take up to pagesPerBatch parsed pages at once, index them and
+ *         add their links to the frontier in one batch, so Indexer and InvertedIndex are never
+ *         used concurrently
+ * a page keep its fetch slot until a parser take it, and a parser wait while the index queue is full,
+ * so a slow stage stop the stages before it instead of piling up pages in memory. every stage
+ * report its throughput, load and queue depth (see StageMetrics) every REPORT_INTERVAL.
+ * every request go through the politeness limits of its host and is checked against its robots.txt,
+ * the pages listed in the sitemaps of a host are added to the frontier (see HostMetadata).
+ * the links to fetch are kept in the Frontier, the changes of a page, its new links and the removal
+ * of the page from the frontier are committed at once, so a stopped or crashed crawl resume from
+ * where it was.
+ * when the crawl is split between processes (see PartitionedCrawl), the links of the hosts of the
+ * other partitions are forwarded to them once the batch finding them is committed, and the links
+ * forwarded to this partition are added to the frontier between batches
+ */
 class Spider {
+    private static final int NUM_OF_THREAD = 16;
+    private static final double REQUESTS_PER_SECOND_PER_HOST = 5;
+    private static final int CONNECTIONS_PER_HOST = 4;
+    /**
+     * the fetches hold no thread, so many more pages than parsing threads are fetched at once
+     */
+    private static final int FETCHES_PER_THREAD = 8;
+    private static final int INDEX_QUEUE_SIZE = 64;
+    private static final int PAGES_PER_BATCH = 16;
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * priority of the pages found in sitemaps, as the links of the first pages
+     */
+    private static final int SITEMAP_PRIORITY = 1;
+    /**
+     * these website have problem, will make the program in trouble, they are never added to the frontier
+     */
+    private static final Set<String> EXCLUDED_PAGES = canonicalize(Arrays.asList(
+            "https://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html",
+            "http://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html",
+            "http://www.cse.ust.hk/faculty/rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html",
+            "http://www.cse.ust.hk/faculty/rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html",
+            "https://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html",
+            "http://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html",
+            "http://home.cse.ust.hk/~twinsen/OurGMM.m",
+            "http://home.cse.ust.hk/~skiena/510/schedule"));
+
+    private static Set<String> canonicalize(Collection<String> links) {
+        Set<String> canonicalLinks = new LinkedHashSet<>();
+        for (String link : links) {
+            canonicalLinks.add(URLCanonicalizer.getInstance().canonicalize(link));
+        }
+        return canonicalLinks;
+    }
+
     private final Indexer indexer;
     private final InvertedIndex invertedIndex;
     private final PageProperty pageProperty;
-    private final Queue<String> queue;
+    private final Frontier frontier;
+    private final NearDuplicates nearDuplicates;
+    private final HostMetadata hostMetadata;
+    private final int numOfParser;
+    /**
+     * maximum number of page being fetched or waiting to be parsed
+     */
+    private final int maxFetches;
+    private final int indexQueueSize;
+    private final int pagesPerBatch;
+    private final HostPoliteness politeness;
+    private PageSource source = Fetcher.getInstance();
+    /**
+     * null if the spider crawl every host
+     */
+    private Partition partition;
+    /**
+     * whether the last BFS stopped because every link left in the frontier was deferred
+     */
+    private boolean onlyDeferred;
 
     /**
-     * fetch one link (use for beginning)
+     * fetch from one link (use for beginning), the link is ignored if it has been added before
      * @param url the link
      */
     Spider(String url){
-        indexer = Indexer.getInstance();
-        invertedIndex = InvertedIndex.getInstance();
-        pageProperty = PageProperty.getInstance();
-        queue = new LinkedList<>();
-        queue.add(url);
+        this(Collections.singletonList(url));
+    }
+
+    /**
+     * fetch from many link, links added before are ignored and the crawl continue with the links
+     * already in the frontier
+     * @param links the links
+     */
+    Spider(Collection<String> links) {
+        this(links, NUM_OF_THREAD, REQUESTS_PER_SECOND_PER_HOST, CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * @param links links added to the frontier with the highest priority
+     * @param numOfThread number of thread parsing the fetched pages
+     * @param requestsPerSecond maximum average number of request per second to a host
+     * @param connectionsPerHost maximum number of request in flight to a host
+     */
+    Spider(Collection<String> links, int numOfThread, double requestsPerSecond, int connectionsPerHost) {
+        this(links, numOfThread, numOfThread * FETCHES_PER_THREAD, INDEX_QUEUE_SIZE, PAGES_PER_BATCH,
+                requestsPerSecond, connectionsPerHost);
     }
 
     /**
-     * fetch many link (use for subsequence fetch), is much quicker
-     * @param queue the queue contain all the links
+     * @param links links added to the frontier with the highest priority
+     * @param numOfParser number of thread parsing the fetched pages
+     * @param maxFetches maximum number of page being fetched or waiting to be parsed
+     * @param indexQueueSize maximum number of parsed page waiting to be indexed
+     * @param pagesPerBatch maximum number of page indexed in one batch
+     * @param requestsPerSecond maximum average number of request per second to a host
+     * @param connectionsPerHost maximum number of request in flight to a host
      */
-    Spider(Queue<String> queue) {
+    Spider(Collection<String> links, int numOfParser, int maxFetches, int indexQueueSize, int pagesPerBatch,
+           double requestsPerSecond, int connectionsPerHost) {
         indexer = Indexer.getInstance();
         invertedIndex = InvertedIndex.getInstance();
         pageProperty = PageProperty.getInstance();
-        this.queue = queue;
+        frontier = Frontier.getInstance();
+        nearDuplicates = NearDuplicates.getInstance();
+        hostMetadata = HostMetadata.getInstance();
+        this.numOfParser = numOfParser;
+        this.maxFetches = maxFetches;
+        this.indexQueueSize = indexQueueSize;
+        this.pagesPerBatch = pagesPerBatch;
+        politeness = new HostPoliteness(requestsPerSecond, connectionsPerHost);
+        Set<String> seeds = canonicalize(links);
+        seeds.removeAll(EXCLUDED_PAGES);
+        frontier.addAll(seeds, 0);
+    }
+
+    /**
+     * @param source where the pages are fetched from, the web by default
+     */
+    void setPageSource(PageSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @param partition the partition crawled by this spider, the links of other hosts are forwarded
+     */
+    void setPartition(Partition partition) {
+        this.partition = partition;
+    }
+
+    /**
+     * seeker of a link, a page already in the system is fetched by a conditional GET
+     * with the validators recorded last time
+     * @param url the link
+     * @return the seeker, nothing is fetched yet
+     */
+    private WebInfoSeeker newSeeker(String url) {
+        int pageID = indexer.searchIDByURL(url, false);
+        if (pageID == -1 || pageProperty.getUrl(pageID) == null) {
+            return new WebInfoSeeker(url, null, null, source);
+        }
+        return new WebInfoSeeker(url, pageProperty.getLastModificationTime(pageID), pageProperty.getEtag(pageID),
+                source);
+    }
+
+    /**
+     * result of fetching a link:
+     * fetched: the page is fetched
+     * skipped: the page is surely out of scope or disallowed by robots.txt, the link is removed
+     * deferred: the robots.txt of the host cannot be fetched for now, the link stay in the frontier
+     */
+    private enum FetchResult {fetched, skipped, deferred}
+
+    /**
+     * fetch a page once the politeness limits of its host allow it, a page not fetched from the web
+     * is fetched at once. a page surely out of scope or disallowed by robots.txt is not fetched
+     * @param seeker seeker of the link
+     * @return completed with the result
+     */
+    private CompletableFuture<FetchResult> fetch(WebInfoSeeker seeker) {
+        String host = seeker.getHost();
+        if (host == null || !seeker.isCSEWebpage() || !seeker.mayBeHtmlPage()) {
+            return CompletableFuture.completedFuture(FetchResult.skipped);
+        }
+        return hostMetadata.getRules(seeker.getUrl(), source).thenCompose(rules -> {
+            // only an unreachable robots.txt give DISALLOW_ALL, the host is tried again after ERROR_TTL
+            if (rules == RobotsRules.DISALLOW_ALL) {
+                return CompletableFuture.completedFuture(FetchResult.deferred);
+            }
+            if (!HostMetadata.isAllowed(seeker.getUrl(), rules)) {
+                return CompletableFuture.completedFuture(FetchResult.skipped);
+            }
+            if (!source.isRemote()) {
+                return seeker.fetch().thenApply(page -> FetchResult.fetched);
+            }
+            politeness.setCrawlDelay(host, rules.getCrawlDelay());
+            return politeness.acquire(host)
+                    .thenCompose(v -> seeker.fetch().whenComplete((page, e) -> politeness.release(host)))
+                    .thenApply(page -> FetchResult.fetched);
+        });
+    }
+
+    /**
+     * a link going through the stages
+     */
+    private static class Job {
+        private final Frontier.Entry entry;
+        /**
+         * null if the page failed
+         */
+        private WebInfoSeeker seeker;
+        private FetchResult result = FetchResult.skipped;
+
+        private Job(Frontier.Entry entry, WebInfoSeeker seeker) {
+            this.entry = entry;
+            this.seeker = seeker;
+        }
     }
+
+    /**
+     * queues and metrics of the stages of one BFS, the parsers of a BFS never touch the next one
+     */
+    private class Pipeline {
+        private final Semaphore fetchSlots = new Semaphore(maxFetches);
+        /**
+         * bounded by the fetch slots
+         */
+        private final BlockingQueue<Job> parseQueue = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Job> indexQueue = new ArrayBlockingQueue<>(indexQueueSize);
+        /**
+         * links polled from the frontier and not indexed yet, only used by the thread running BFS
+         */
+        private final Set<Frontier.Entry> inPipeline = new HashSet<>();
+        /**
+         * links deferred, kept polled until the end of the BFS so they are not polled again at once
+         */
+        private final List<Frontier.Entry> deferred = new ArrayList<>();
+        private final StageMetrics fetchMetrics = new StageMetrics("fetch", maxFetches, null, 0);
+        private final StageMetrics parseMetrics = new StageMetrics("parse", numOfParser, parseQueue, maxFetches);
+        private final StageMetrics indexMetrics = new StageMetrics("index", 1, indexQueue, indexQueueSize);
+
+        /**
+         * poll as many links as there are free fetch slots and start fetching them, never more than the
+         * pages still required, so no page is fetched only to be dropped when the BFS is over
+         * @param numOfPage number of page still required
+         */
+        private void startFetches(int numOfPage) {
+            // only this thread take the slots, so they are all still free after polling
+            int n = Math.min(fetchSlots.availablePermits(), numOfPage - inPipeline.size());
+            for (Frontier.Entry entry : frontier.poll(Math.max(0, n))) {
+                fetchSlots.acquireUninterruptibly();
+                inPipeline.add(entry);
+                Job job = new Job(entry, newSeeker(entry.getUrl()));
+                long begin = fetchMetrics.begin();
+                fetch(job.seeker).whenComplete((result, e) -> {
+                    if (e != null) {
+                        // the page is dropped from the frontier
+                        e.printStackTrace();
+                        job.seeker = null;
+                    } else {
+                        job.result = result;
+                    }
+                    fetchMetrics.end(begin, 1);
+                    parseQueue.add(job);
+                });
+            }
+        }
+
+        /**
+         * run by each parser until it is interrupted
+         */
+        private void parse() {
+            try {
+                while (true) {
+                    Job job = parseQueue.take();
+                    fetchSlots.release();
+                    long begin = parseMetrics.begin();
+                    try {
+                        if (job.result == FetchResult.fetched && job.seeker.canAccess() && job.seeker.isHtmlPage()) {
+                            job.seeker.parse();
+                        }
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        job.seeker = null;
+                    }
+                    parseMetrics.end(begin, 1);
+                    indexQueue.put(job);
+                }
+            } catch (InterruptedException e) {
+                // the BFS is over
+            }
+        }
+
+        /**
+         * wait for parsed pages and take up to n of them
+         * @param n maximum number of page
+         * @return the parsed pages
+         */
+        private List<Job> take(int n) throws InterruptedException {
+            List<Job> jobs = new ArrayList<>();
+            jobs.add(indexQueue.take());
+            indexQueue.drainTo(jobs, n - 1);
+            return jobs;
+        }
+
+        private void sample() {
+            parseMetrics.sample();
+            indexMetrics.sample();
+        }
+
+        private void report() {
+            System.out.println(fetchMetrics);
+            System.out.println(parseMetrics);
+            System.out.println(indexMetrics);
+        }
+    }
+
     /**
      * do BFS
      * fetch n more page to the system, weather a page need to be fetch into the system
-     * will be determine automatically.
+     * will be determine automatically. the priority of a link is its depth from the first links,
+     * up to maxFetches pages, and never more than the pages still required, are fetched ahead, so the
+     * pages are indexed in the order their fetch complete, not exactly in BFS order. a fetched link
+     * count for at most one page, so every page fetched is indexed before the BFS return. it can be called again
+     * to fetch n more.
      * n must not be too large, otherwise continuous access the same web server
      * too much in a short time will make the web server treat you as hacker
      * (connect to UST vpn can solve this problem)
-     * Moreover, set n too large will cause stack overflow runtime error...
-     * just set n around 1000 is secure.
      * and block access from you temporarily.
      * @param numOfPage n (required number of page to be fetch)
+     * @return number of page fetched into the system
      */
-    void BFS(int numOfPage){
-        Set<String> discoveredPage = new HashSet<>();
-        // these website have problem, will make the program in trouble, add them to discoveredPage
-        // in order to avoid the spider reach those site.
-        discoveredPage.add("https://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html");
-        discoveredPage.add("http://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html");
-        discoveredPage.add("http://www.cse.ust.hk/faculty/rossiter/independent_studies_projects/classifier_reddit_bots/post_title_chart.html");
-        discoveredPage.add("http://www.cse.ust.hk/faculty/rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html");
-        discoveredPage.add("https://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html");
-        discoveredPage.add("http://home.cse.ust.hk/~rossiter/independent_studies_projects/classifier_reddit_bots/comment_text_chart.html");
-        discoveredPage.add("http://home.cse.ust.hk/~twinsen/OurGMM.m");
-        discoveredPage.add("http://home.cse.ust.hk/~skiena/510/schedule");
+    int BFS(int numOfPage){
         int pageFetched = 0;
-        while (!queue.isEmpty()) {
-            String site = queue.remove();
-            if (pageFetched >= numOfPage) {
+        onlyDeferred = false;
+        long start = System.nanoTime();
+        long lastReport = start;
+        Pipeline pipeline = new Pipeline();
+        ExecutorService parsers = Executors.newFixedThreadPool(numOfParser);
+        for (int i = 0; i < numOfParser; i++) {
+            parsers.execute(pipeline::parse);
+        }
+        while (pageFetched < numOfPage) {
+            if (partition != null) {
+                receiveLinks();
+            }
+            pipeline.startFetches(numOfPage - pageFetched);
+            if (pipeline.inPipeline.isEmpty()) {
+                // the deferred links stay polled, so nothing else is left to fetch
+                onlyDeferred = !pipeline.deferred.isEmpty();
                 break;
             }
-            if (discoveredPage.contains(site)) {
-                continue;
+            List<Job> jobs;
+            try {
+                // a batch never hold more pages than the ones still required
+                jobs = pipeline.take(Math.max(1, Math.min(pagesPerBatch, numOfPage - pageFetched)));
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                break;
             }
-            PageType type = fetchCase(site);
-            discoveredPage.add(site);
-            if (type == PageType.ignore) {
-                continue;
+            long begin = pipeline.indexMetrics.begin();
+            // all changes of the pages are committed at once
+            try (WriteBatch batch = new WriteBatch()) {
+                for (Job job : jobs) {
+                    if (job.result == FetchResult.deferred) {
+                        continue;
+                    }
+                    if (job.seeker != null && job.result == FetchResult.fetched) {
+                        pageFetched += process(job.seeker, job.entry.getPriority(), batch);
+                    }
+                    frontier.remove(job.entry, batch);
+                }
+                addLinks(hostMetadata.takeDiscovered(), SITEMAP_PRIORITY, batch);
+                invertedIndex.commit(batch);
+            }
+            frontier.committed();
+            if (partition != null) {
+                partition.flush();
             }
-            int pageID = 0;
-            if ( type != PageType.bypass) {
-                pageFetched++;
-                pageID = indexer.searchIDByURL(site, true);
-                System.out.println(pageFetched);
-                System.out.println(pageID +" handling " + site);
-                if (type == PageType.updateOld) {
-                    System.out.print("clear record ");
-                    invertedIndex.clearRecord(pageID);
+            for (Job job : jobs) {
+                pipeline.inPipeline.remove(job.entry);
+                if (job.result == FetchResult.deferred) {
+                    pipeline.deferred.add(job.entry);
+                } else {
+                    frontier.release(job.entry);
                 }
-                System.out.print("finding info ");
-                pageProperty.store(pageID, site);
-                System.out.print("indexing ");
-                invertedIndex.store(pageID, site);
-                System.out.print("processing ");
-            }
-
-            List<String> links;
-            if(type == PageType.bypass){
-                links = invertedIndex.getAllChildPage(pageID, InvertedIndex.Status.All);
-            } else {
-                links = new WebInfoSeeker(site).getChildLinks();
-            }
-            for (String link : links) {
-                if (!queue.contains(link)) {
-                    queue.add(link);
+            }
+            pipeline.indexMetrics.end(begin, jobs.size());
+            pipeline.sample();
+            if (System.nanoTime() - lastReport > REPORT_INTERVAL) {
+                lastReport = System.nanoTime();
+                pipeline.report();
+            }
+        }
+        parsers.shutdownNow();
+        // the pages still in the pipeline stay in the frontier and are fetched again next time
+        for (Frontier.Entry entry : pipeline.inPipeline) {
+            frontier.release(entry);
+        }
+        for (Frontier.Entry entry : pipeline.deferred) {
+            frontier.release(entry);
+        }
+        double second = (System.nanoTime() - start) / 1e9;
+        System.out.println(pageFetched + " pages in " + second + "s, " + pageFetched / second + " pages/s, "
+                + frontier.size() + " links in the frontier");
+        pipeline.report();
+        invertedIndex.flush();
+        frontier.checkpoint();
+        return pageFetched;
+    }
+
+    /**
+     * @return whether the last BFS stopped because the links left in the frontier all wait for the
+     * robots.txt of their host, they are not fetched before ERROR_TTL (see HostMetadata)
+     */
+    boolean hasOnlyDeferredLinks() {
+        return onlyDeferred;
+    }
+
+    /**
+     * add the links forwarded by the other partitions to the frontier
+     */
+    private void receiveLinks() {
+        List<Partition.Link> links = partition.receive();
+        if (links.isEmpty()) {
+            return;
+        }
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Partition.Link link : links) {
+                if (!EXCLUDED_PAGES.contains(link.getUrl()) && !hostMetadata.isDisallowed(link.getUrl())) {
+                    frontier.add(link.getUrl(), link.getPriority(), batch);
                 }
             }
-            System.out.println("complete ");
+            invertedIndex.commit(batch);
+        }
+        frontier.committed();
+        partition.acknowledge();
+    }
+
+    /**
+     * index a fetched page and add its links to the frontier
+     * @param seeker seeker holding the fetched page
+     * @param priority priority of the link of the page
+     * @param batch batch committing the changes of the page
+     * @return 1 if the page is indexed, 0 otherwise
+     */
+    private int process(WebInfoSeeker seeker, int priority, WriteBatch batch) {
+        String site = seeker.getUrl();
+        PageType type = fetchCase(seeker);
+        if (type == PageType.ignore) {
+            return 0;
+        }
+        if (type != PageType.bypass) {
+            int pageID = indexer.searchIDByURL(site, true);
+            System.out.println(pageID +" handling " + site);
+            // a new page with nearly the same content as an indexed page is not indexed, and its links
+            // are not followed, so sites generating endless copies of a page stop at the first copy,
+            // including the copies fetched in the same batch
+            Long fingerprint = seeker.getFingerprint();
+            int duplicateOf = type != PageType.addNew || fingerprint == null ? -1
+                    : nearDuplicates.findDuplicate(fingerprint, pageID, batch);
+            if (duplicateOf != -1) {
+                System.out.println("duplicate of " + duplicateOf);
+                nearDuplicates.addAlias(pageID, duplicateOf, batch);
+                return 0;
+            }
+            if (type == PageType.updateOld) {
+                System.out.print("clear record ");
+                invertedIndex.clearRecord(pageID, batch);
+            }
+            System.out.print("finding info ");
+            pageProperty.store(pageID, seeker, batch);
+            System.out.print("indexing ");
+            invertedIndex.store(pageID, seeker, batch);
+            pageProperty.recordCheck(pageID, type == PageType.updateOld, batch);
+            System.out.print("processing ");
         }
-        try (PrintWriter writer = new PrintWriter("remainingQueue.txt")) {
-            System.out.println("save process");
-            for (String link : queue) {
-                writer.println(link);
+
+        List<String> links;
+        if(type == PageType.bypass){
+            int pageID = indexer.searchIDByURL(site, false);
+            if (!seeker.isNotModified()) {
+                pageProperty.storeValidators(pageID, seeker, batch);
             }
-        } catch (FileNotFoundException e) { e.printStackTrace(); }
+            pageProperty.recordCheck(pageID, false, batch);
+            links = invertedIndex.getAllChildPage(pageID, InvertedIndex.Status.All);
+        } else {
+            links = seeker.getChildLinks();
+        }
+        addLinks(links, priority + 1, batch);
+        System.out.println("complete ");
+        return type == PageType.bypass ? 0 : 1;
+    }
+
+    /**
+     * add links to the frontier, except the excluded ones and the ones known to be disallowed by robots.txt,
+     * the links of other partitions are forwarded instead
+     * @param links the links
+     * @param priority priority of the links
+     * @param batch batch committing the links
+     */
+    private void addLinks(Collection<String> links, int priority, WriteBatch batch) {
+        for (String link : canonicalize(links)) {
+            if (EXCLUDED_PAGES.contains(link)) {
+                continue;
+            }
+            if (partition != null && !partition.owns(link)) {
+                partition.forward(link, priority);
+            } else if (!hostMetadata.isDisallowed(link)) {
+                frontier.add(link, priority, batch);
+            }
+        }
     }
 
     /**
@@ -124,22 +536,33 @@ class Spider {
     /**
      * determine the type of page
      *  if not cse website: ignore
-     * if the link is dead or need login access: ignore
      * if the link go to a non html page: ignore
+     * if the conditional GET found the page not modified: bypass
+     * if the link is dead or need login access: ignore
      * if not in the local system: addNew
      * if in the local system:
-     *      if last modification date of the page is later than (more than 1 day) the recorded in the index: updateOld
-     *      else: bypass
-     * @param url the url to the page
+     *      if the content hash of the page is the same as the recorded one: bypass
+     *      else: updateOld
+     *      a page recorded before the content hash was stored is updated if its last modification changed
+     * the page is fetched once by the seeker and the same response is used to store the page
+     * @param seeker seeker of the url to the page
      * @return case
      */
-    private PageType fetchCase(String url) {
+    private PageType fetchCase(WebInfoSeeker seeker) {
+        String url = seeker.getUrl();
         System.out.println("checking " + url);
-        WebInfoSeeker seeker = new WebInfoSeeker(url);
         //ignore page that is not cse web page
         if (!seeker.isCSEWebpage()) {
             return PageType.ignore;
         }
+        //ignore page that is surely not a html page without fetching it
+        if (!seeker.mayBeHtmlPage()) {
+            return PageType.ignore;
+        }
+        //a conditional GET is only sent for a page in the system
+        if (seeker.isNotModified()) {
+            return PageType.bypass;
+        }
         //ignore page that need login to access, or the link is dead
         if (!seeker.canAccess()) {
             return PageType.ignore;
@@ -157,13 +580,12 @@ class Spider {
             return PageType.addNew;
         }
         //if need update
-        String lastModify = pageProperty.getLastModificationTime(pageID);
-        long diff = new Date(Date.parse(new WebInfoSeeker(url).getLastModificationTime())).getTime()
-                        - new Date(Date.parse(lastModify)).getTime();
-        // 86400000 is 1 day in nanosecond
-        return (diff > 86400000) ? PageType.updateOld : PageType.bypass;
-        //return PageType.updateOld;
-
+        byte[] contentHash = pageProperty.getContentHash(pageID);
+        if (contentHash == null) {
+            return seeker.getLastModificationTime().equals(pageProperty.getLastModificationTime(pageID))
+                    ? PageType.bypass : PageType.updateOld;
+        }
+        return Arrays.equals(contentHash, seeker.getContentHash()) ? PageType.bypass : PageType.updateOld;
     }
 
     /**
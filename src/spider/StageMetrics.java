@@ -0,0 +1,100 @@
+package spider;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * throughput and load of a stage of the crawl, to size the stages separately:
+ *     throughput: pages done per second since the stage started
+ *     busy: time spent on the pages over the time available to the workers of the stage,
+ *         a stage near 100% is the bottleneck and need more workers
+ *     queue: average and maximum number of page waiting for the stage, a queue often full
+ *         means the stage hold back the stages before it
+ * the counters are updated by the workers of the stage, the queue is sampled by one thread only
+ */
+class StageMetrics {
+    private final String name;
+    private final int numOfWorker;
+    private final Collection<?> queue;
+    private final int queueCapacity;
+    private final long start = System.nanoTime();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private long numOfSample;
+    private long sumOfDepth;
+    private int maxDepth;
+
+    /**
+     * @param name name of the stage
+     * @param numOfWorker maximum number of page handled at once by the stage
+     * @param queue pages waiting for the stage, null if the stage has no queue
+     * @param queueCapacity capacity of the queue
+     */
+    StageMetrics(String name, int numOfWorker, Collection<?> queue, int queueCapacity) {
+        this.name = name;
+        this.numOfWorker = numOfWorker;
+        this.queue = queue;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return start time of a page, to pass to end
+     */
+    long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * count pages done by the stage
+     * @param begin start time returned by begin
+     * @param numOfPage number of page done since begin
+     */
+    void end(long begin, int numOfPage) {
+        busyNanos.addAndGet(System.nanoTime() - begin);
+        count.addAndGet(numOfPage);
+    }
+
+    /**
+     * record the current depth of the queue
+     */
+    void sample() {
+        if (queue == null) {
+            return;
+        }
+        int depth = queue.size();
+        numOfSample++;
+        sumOfDepth += depth;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /**
+     * @return number of page done
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return pages done per second
+     */
+    double getThroughput() {
+        return count.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * @return fraction of the time of the workers spent on pages
+     */
+    double getUtilization() {
+        return busyNanos.get() / ((double) (System.nanoTime() - start) * numOfWorker);
+    }
+
+    public String toString() {
+        String s = String.format("%s: %d pages, %.1f/s, %.0f%% busy of %d", name, getCount(), getThroughput(),
+                getUtilization() * 100, numOfWorker);
+        if (queue != null) {
+            s += String.format(", queue %d/%d (average %.1f, max %d)", queue.size(), queueCapacity,
+                    numOfSample == 0 ? 0 : (double) sumOfDepth / numOfSample, maxDepth);
+        }
+        return s;
+    }
+}
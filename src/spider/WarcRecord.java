@@ -0,0 +1,180 @@
+package spider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * a record of a WARC file (WARC 1.0, ISO 28500): a version line, named fields, an empty line,
+ * a block of Content-Length bytes and two empty lines. a response record hold the status line,
+ * the headers and the body of a HTTP response as the block.
+ * the requested url is kept in the WARC-Requested-URI field when a redirect was followed
+ */
+class WarcRecord {
+    private static final String VERSION = "WARC/1.0";
+    private static final String CRLF = "\r\n";
+    private static final String REQUESTED_URI = "WARC-Requested-URI";
+
+    private final Map<String, String> fields;
+    private final byte[] block;
+
+    private WarcRecord(Map<String, String> fields, byte[] block) {
+        this.fields = fields;
+        this.block = block;
+    }
+
+    /**
+     * @param software name of the program writing the file
+     * @return the warcinfo record starting a file
+     */
+    static byte[] warcinfo(String software) {
+        byte[] block = ("software: " + software + CRLF + "format: WARC File Format 1.0" + CRLF)
+                .getBytes(StandardCharsets.UTF_8);
+        return toBytes("warcinfo", null, "application/warc-fields", block);
+    }
+
+    /**
+     * @param page a fetched page
+     * @return the response record of the page
+     */
+    static byte[] response(FetchedPage page) {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(page.getStatus()).append(' ').append(CRLF);
+        for (Map.Entry<String, List<String>> header : page.getHeaders().entrySet()) {
+            // pseudo headers of HTTP/2
+            if (header.getKey().startsWith(":")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(value).append(CRLF);
+            }
+        }
+        head.append(CRLF);
+        byte[] body = page.getBody();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.writeBytes(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        block.writeBytes(body);
+        Map<String, String> extra = new LinkedHashMap<>();
+        extra.put("WARC-Target-URI", page.getLocation());
+        if (!page.getLocation().equals(page.getUrl())) {
+            extra.put(REQUESTED_URI, page.getUrl());
+        }
+        long length = page.getContentLength();
+        if (length > body.length) {
+            // the body is not read or is cut at Fetcher.MAX_BODY_SIZE
+            extra.put("WARC-Truncated", "length");
+        }
+        return toBytes("response", extra, "application/http; msgtype=response", block.toByteArray());
+    }
+
+    private static byte[] toBytes(String type, Map<String, String> extra, String contentType, byte[] block) {
+        StringBuilder head = new StringBuilder(VERSION).append(CRLF);
+        head.append("WARC-Type: ").append(type).append(CRLF);
+        head.append("WARC-Record-ID: <urn:uuid:").append(UUID.randomUUID()).append('>').append(CRLF);
+        head.append("WARC-Date: ").append(Instant.now().truncatedTo(ChronoUnit.SECONDS)).append(CRLF);
+        if (extra != null) {
+            for (Map.Entry<String, String> field : extra.entrySet()) {
+                head.append(field.getKey()).append(": ").append(field.getValue()).append(CRLF);
+            }
+        }
+        head.append("Content-Type: ").append(contentType).append(CRLF);
+        head.append("Content-Length: ").append(block.length).append(CRLF).append(CRLF);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(head.length() + block.length + 4);
+        record.writeBytes(head.toString().getBytes(StandardCharsets.UTF_8));
+        record.writeBytes(block);
+        record.writeBytes((CRLF + CRLF).getBytes(StandardCharsets.US_ASCII));
+        return record.toByteArray();
+    }
+
+    /**
+     * @param record bytes of one record
+     * @return the record
+     * @throws IOException if it is not a WARC record
+     */
+    static WarcRecord parse(byte[] record) throws IOException {
+        int end = indexOfEmptyLine(record, 0);
+        if (end == -1) {
+            throw new IOException("no end of WARC header");
+        }
+        String[] lines = new String(record, 0, end, StandardCharsets.UTF_8).split(CRLF);
+        if (!lines[0].startsWith("WARC/")) {
+            throw new IOException("not a WARC record");
+        }
+        Map<String, String> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                fields.put(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+            }
+        }
+        int start = end + 4;
+        int length;
+        try {
+            length = Math.min(Integer.parseInt(fields.getOrDefault("Content-Length", "0")), record.length - start);
+        } catch (NumberFormatException e) {
+            throw new IOException("bad Content-Length", e);
+        }
+        return new WarcRecord(fields, Arrays.copyOfRange(record, start, start + length));
+    }
+
+    /**
+     * @return position of the "\r\n\r\n" ending a header, -1 if there is none
+     */
+    private static int indexOfEmptyLine(byte[] bytes, int from) {
+        for (int i = from; i + 3 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getType() {
+        return fields.get("WARC-Type");
+    }
+
+    /**
+     * @return url requested, before following the redirects
+     */
+    String getRequestedUri() {
+        return fields.getOrDefault(REQUESTED_URI, fields.get("WARC-Target-URI"));
+    }
+
+    /**
+     * @return HTTP status of a response record, -1 if it cannot be read
+     */
+    int getStatus() {
+        int end = 0;
+        while (end < block.length && block[end] != '\r') {
+            end++;
+        }
+        String[] statusLine = new String(block, 0, end, StandardCharsets.ISO_8859_1).split(" ");
+        try {
+            return statusLine.length > 1 ? Integer.parseInt(statusLine[1]) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param url url requested
+     * @return the page of a response record
+     */
+    FetchedPage toPage(String url) {
+        int end = indexOfEmptyLine(block, 0);
+        int headerEnd = end == -1 ? block.length : end;
+        String[] lines = new String(block, 0, headerEnd, StandardCharsets.ISO_8859_1).split(CRLF);
+        Map<String, List<String>> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.computeIfAbsent(lines[i].substring(0, colon).trim(), name -> new ArrayList<>())
+                        .add(lines[i].substring(colon + 1).trim());
+            }
+        }
+        byte[] body = end == -1 ? new byte[0] : Arrays.copyOfRange(block, end + 4, block.length);
+        return FetchedPage.of(url, fields.get("WARC-Target-URI"), getStatus(), headers, body);
+    }
+}
@@ -0,0 +1,237 @@
+package spider;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * serve the pages from the WARC files written by WarcWriter (or any .warc.gz with a gzip member
+ * per record) instead of the web, so a crawl can be rebuilt without network and always see the
+ * same pages, e.g. to benchmark the spider and the indexer.
+ * the files are scanned once when it is created, the offset of the last response of every url is
+ * kept in memory and the record is read again when the url is fetched.
+ * a conditional GET is answered by 304 if a validator match the archived response, like a web server,
+ * a url not archived is not fetched
+ */
+class WarcReplay implements PageSource {
+    private static final int NOT_MODIFIED = 304;
+
+    /**
+     * url -> the last response archived
+     */
+    private final Map<String, Location> responses = new HashMap<>();
+
+    private static class Location {
+        private final File file;
+        private final long offset;
+
+        private Location(File file, long offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * @param directory directory of the archives, the files are read in name order
+     * @throws IOException if a file cannot be read
+     */
+    WarcReplay(File directory) throws IOException {
+        this(Collections.singletonList(directory));
+    }
+
+    /**
+     * @param directories directories of the archives, read in order, the files of a directory in name order
+     * @throws IOException if a file cannot be read
+     */
+    WarcReplay(List<File> directories) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File directory : directories) {
+            File[] names = directory.listFiles((dir, name) -> name.endsWith(".warc.gz"));
+            if (names == null) {
+                throw new FileNotFoundException(directory.getPath());
+            }
+            Arrays.sort(names);
+            files.addAll(Arrays.asList(names));
+        }
+        for (File file : files) {
+            try (MemberReader reader = new MemberReader(file, 0)) {
+                for (long offset = reader.getOffset(); ; offset = reader.getOffset()) {
+                    byte[] member = reader.readMember();
+                    if (member == null) {
+                        break;
+                    }
+                    WarcRecord record = WarcRecord.parse(member);
+                    // a 304 has no body, the response it refer to is kept
+                    if ("response".equals(record.getType()) && record.getStatus() != NOT_MODIFIED) {
+                        responses.put(record.getRequestedUri(), new Location(file, offset));
+                    }
+                }
+            }
+        }
+    }
+
+    public CompletableFuture<FetchedPage> fetch(String url, String lastModified, String etag) {
+        Location location = responses.get(url);
+        if (location == null) {
+            return CompletableFuture.completedFuture(FetchedPage.failed(url));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try (MemberReader reader = new MemberReader(location.file, location.offset)) {
+                byte[] member = reader.readMember();
+                if (member == null) {
+                    throw new EOFException(location.file + " end before " + location.offset);
+                }
+                FetchedPage page = WarcRecord.parse(member).toPage(url);
+                if ((etag != null && etag.equals(page.getHeader("ETag")))
+                        || (etag == null && lastModified != null && lastModified.equals(page.getHeader("Last-Modified")))) {
+                    return FetchedPage.of(url, page.getLocation(), NOT_MODIFIED, page.getHeaders(), new byte[0]);
+                }
+                return page;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return FetchedPage.failed(url);
+            }
+        });
+    }
+
+    public CompletableFuture<FetchedPage> fetchFile(String url) {
+        return fetch(url, null, null);
+    }
+
+    public boolean isRemote() {
+        return false;
+    }
+
+    /**
+     * @return number of url archived
+     */
+    int size() {
+        return responses.size();
+    }
+
+    /**
+     * read the gzip members of a file one by one, knowing the offset of each of them
+     */
+    private static class MemberReader implements Closeable {
+        private final InputStream in;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+        /**
+         * offset in the file of buffer[0]
+         */
+        private long bufferOffset;
+
+        private MemberReader(File file, long offset) throws IOException {
+            in = new FileInputStream(file);
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new EOFException();
+                }
+                skipped += n;
+            }
+            bufferOffset = offset;
+        }
+
+        private long getOffset() {
+            return bufferOffset + position;
+        }
+
+        private boolean fill() throws IOException {
+            bufferOffset += limit;
+            position = 0;
+            limit = Math.max(0, in.read(buffer));
+            return limit > 0;
+        }
+
+        private int readByte() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                if (readByte() == -1) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        /**
+         * @return the next member decompressed, null at the end of the file
+         */
+        private byte[] readMember() throws IOException {
+            int id1 = readByte();
+            if (id1 == -1) {
+                return null;
+            }
+            int id2 = readByte(), method = readByte(), flags = readByte();
+            if (id1 != 0x1f || id2 != 0x8b || method != 8) {
+                throw new ZipException("not a gzip member at " + (getOffset() - 4));
+            }
+            // modification time, extra flags and operating system
+            skip(6);
+            if ((flags & 4) != 0) {
+                skip(readByte() | readByte() << 8);
+            }
+            // file name and comment end by 0
+            for (int field = 8; field <= 16; field <<= 1) {
+                if ((flags & field) != 0) {
+                    int c;
+                    do {
+                        c = readByte();
+                    } while (c > 0);
+                }
+            }
+            if ((flags & 2) != 0) {
+                skip(2);
+            }
+            inflater.reset();
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            byte[] output = new byte[64 * 1024];
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (position == limit && !fill()) {
+                            throw new EOFException("truncated gzip member");
+                        }
+                        inflater.setInput(buffer, position, limit - position);
+                        position = limit;
+                    }
+                    int n = inflater.inflate(output);
+                    member.write(output, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            // give back the input after the member, then skip the crc and size
+            position -= inflater.getRemaining();
+            skip(8);
+            return member.toByteArray();
+        }
+
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * show the urls archived in a directory
+     */
+    public static void main(String[] args) throws IOException {
+        WarcReplay replay = new WarcReplay(new File(args.length > 0 ? args[0] : "warc"));
+        for (String url : replay.responses.keySet()) {
+            System.out.println(url);
+        }
+        System.out.println(replay.size() + " urls");
+    }
+}
@@ -0,0 +1,100 @@
+package spider;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * fetch the pages through another source and archive every response into compressed WARC files,
+ * to replay the crawl later by WarcReplay. each record is a gzip member of its own, like every
+ * .warc.gz, so a record can be read without decompressing the records before it.
+ * a file is closed once it reach MAX_FILE_SIZE and another one is started, a record is written by
+ * one write call so a crash lose at most the record being written
+ */
+class WarcWriter implements PageSource, Closeable {
+    private static final long MAX_FILE_SIZE = 1L << 30;
+    private static final String SOFTWARE = "spider";
+
+    private final PageSource source;
+    private final File directory;
+    private final String prefix;
+    private OutputStream out;
+    private long fileSize;
+    private int numOfFile;
+
+    /**
+     * @param source source fetching the pages
+     * @param directory directory of the archives, created if missing
+     */
+    WarcWriter(PageSource source, File directory) {
+        this.source = source;
+        this.directory = directory;
+        prefix = SOFTWARE + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("fail to create " + directory);
+        }
+    }
+
+    public CompletableFuture<FetchedPage> fetch(String url, String lastModified, String etag) {
+        return source.fetch(url, lastModified, etag).thenApply(this::archive);
+    }
+
+    public CompletableFuture<FetchedPage> fetchFile(String url) {
+        return source.fetchFile(url).thenApply(this::archive);
+    }
+
+    private FetchedPage archive(FetchedPage page) {
+        if (page.getStatus() != -1) {
+            write(WarcRecord.response(page));
+        }
+        return page;
+    }
+
+    public boolean isRemote() {
+        return source.isRemote();
+    }
+
+    private static byte[] compress(byte[] record) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(record.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(record);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @param record a record, compressed and appended to the current file
+     */
+    private void write(byte[] record) {
+        try {
+            byte[] compressed = compress(record);
+            synchronized (this) {
+                if (out == null || fileSize >= MAX_FILE_SIZE) {
+                    nextFile();
+                }
+                out.write(compressed);
+                fileSize += compressed.length;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void nextFile() throws IOException {
+        close();
+        File file = new File(directory, String.format("%s-%05d.warc.gz", prefix, numOfFile++));
+        out = new FileOutputStream(file);
+        byte[] warcinfo = compress(WarcRecord.warcinfo(SOFTWARE));
+        out.write(warcinfo);
+        fileSize = warcinfo.length;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
@@ -1,30 +1,61 @@
 package spider;
 
-import org.htmlparser.beans.LinkBean;
-import org.htmlparser.beans.StringBean;
+import indexer.NearDuplicates;
+import util.SimHash;
 import util.Word;
 
-import java.io.*;
-import java.net.*;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class WebInfoSeeker {
     private final String url;
-    private String words = null;
+    /**
+     * validators of the page when it was fetched last time, null if unknown
+     */
+    private final String lastModified;
+    private final String etag;
+    private final PageSource source;
+    private FetchedPage page = null;
+    private HtmlContent content = null;
+    private Vector<String> keywords = null;
+    private Long fingerprint = null;
 
     public WebInfoSeeker(String url) {
+        this(url, null, null);
+    }
+
+    /**
+     * the page is fetched by a conditional GET
+     * @param url the link
+     * @param lastModified Last-Modified of the page when it was fetched last time, null if unknown
+     * @param etag ETag of the page when it was fetched last time, null if unknown
+     */
+    WebInfoSeeker(String url, String lastModified, String etag) {
+        this(url, lastModified, etag, Fetcher.getInstance());
+    }
+
+    /**
+     * @param url the link
+     * @param lastModified Last-Modified of the page when it was fetched last time, null if unknown
+     * @param etag ETag of the page when it was fetched last time, null if unknown
+     * @param source where the page is fetched from
+     */
+    WebInfoSeeker(String url, String lastModified, String etag, PageSource source) {
         this.url = url;
+        this.lastModified = lastModified;
+        this.etag = etag;
+        this.source = source;
     }
 
     boolean isCSEWebpage() {
         try {
             if (url.split("/")[2].contains("cse.ust.hk")) {
-                //ignore some rubbish page
-                //the following two site will produce many many many page with same content
-                if (url.contains("/vislab_homepage/vislab_homepage/") || url.contains("comp151.cse.ust.hk/~dekai/content/")
-                        //the following three site have many page but is useless and contain no useful info
-                        || url.contains("labschedule.cse.ust.hk") || url.contains("booking.cse.ust.hk")
-                                || url.contains("stubooking.cse.ust.hk")) {
+                //ignore some rubbish page, site producing many page with same content are found by NearDuplicates
+                //the following three site have many page but is useless and contain no useful info
+                if (url.contains("labschedule.cse.ust.hk") || url.contains("booking.cse.ust.hk")
+                        || url.contains("stubooking.cse.ust.hk")) {
                     return false;
                 }
                 return true;
@@ -36,17 +67,74 @@ public class WebInfoSeeker {
         }
     }
 
+    /**
+     * download the page on the first call, every other information of the page is derived from it
+     * @return the page
+     */
+    FetchedPage getPage() {
+        if (page == null) {
+            page = source.fetch(url, lastModified, etag).join();
+        }
+        return page;
+    }
+
+    /**
+     * download the page without waiting for it, the seeker must not be used until it completes
+     * @return the page
+     */
+    CompletableFuture<FetchedPage> fetch() {
+        return source.fetch(url, lastModified, etag).thenApply(fetched -> page = fetched);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return host of the url, null if the url is malformed
+     */
+    String getHost() {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * parse the content and the keywords of the fetched page in advance, so that the thread
+     * indexing the page only has to store them
+     */
+    void parse() {
+        getKeywords();
+        getFingerprint();
+    }
+
+    /**
+     * @return whether the page is not modified since it was fetched last time, its body is not downloaded
+     */
+    boolean isNotModified() {
+        return getPage().isNotModified();
+    }
+
     /**
      * a page can access only if no need to login and the link is alive
      * @return weather the page can be access
      */
     boolean canAccess() {
-        try{
-            new URL(url).openStream();
-        } catch (Exception e) {
-            return false;
-        }
-        return true;
+        return getPage().isOk();
+    }
+
+    /**
+     * check if a link go to a non html file by its extension, the page is not fetched
+     * @return false if the link is surely not a html page
+     */
+    boolean mayBeHtmlPage() {
+        return !(url.contains(".bib") || url.contains(".pdf") || url.contains(".doc")
+                || url.contains(".zip") || url.contains(".scala") || url.contains(".key")
+                    || url.contains(".rar") || url.contains(".7z") || url.contains(".txt")
+                        || url.contains("/files/") || url.contains(".bat") || url.contains(".py")
+                            || url.contains(".hpp") || url.contains(".m4a") || url.contains(".java"));
     }
 
     /**
@@ -55,23 +143,17 @@ public class WebInfoSeeker {
      * @return true if is a html page
      */
     boolean isHtmlPage() {
-        if (url.contains(".bib") || url.contains(".pdf") || url.contains(".doc")
-                || url.contains(".zip") || url.contains(".scala") || url.contains(".key")
-                    || url.contains(".rar") || url.contains(".7z") || url.contains(".txt")
-                        || url.contains("/files/") || url.contains(".bat") || url.contains(".py")
-                            || url.contains(".hpp") || url.contains(".m4a") || url.contains(".java")) {
-            return false;
-        }
-        try {
-            String connectionType = null;
-            while (connectionType == null) {
-                connectionType = new URL(url).openConnection().getHeaderField("Content-Type");
-            }
-            return connectionType.contains("html");
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        return mayBeHtmlPage() && getPage().isHtml();
+    }
+
+    /**
+     * extract the content of the fetched body on the first call
+     */
+    private HtmlContent getContent() {
+        if (content == null) {
+            content = HtmlContent.extract(getPage());
         }
+        return content;
     }
 
     /**
@@ -79,131 +161,57 @@ public class WebInfoSeeker {
      * @return list of children links
      */
     public List<String> getChildLinks() {
-        List<String> links = new LinkedList<>();
-        LinkBean bean = new LinkBean();
-        bean.setURL(url);
-        URL[] urls = bean.getLinks();
-        for (URL link : urls) {
-            String l = link.toString();
-            // remove any junk suffix at the end of url
-            while (true) {
-                char lastChar = l.charAt(l.length() - 1);
-                if( (lastChar >= 'a' && lastChar <= 'z') ||
-                        (lastChar >= 'A' && lastChar <= 'Z') ||
-                        Character.isDigit(lastChar))   // last char is alphabet or a digit
-                    break;
-                else
-                    l = l.substring(0, l.length()-1);
-            }
-            links.add(l);
-        }
-        return links;
+        return new LinkedList<>(getContent().getLinks());
     }
 
     public String getTitle() {
-        try {
-            InputStream response = new URL(url).openStream();
-            Scanner scanner = new Scanner(response);
-            String responseBody = scanner.useDelimiter("\\A").next();
-            responseBody = responseBody.toLowerCase(Locale.ROOT);
-            if (!responseBody.contains("<title>")) {
-                return "NoTitle";
-            }
-            String title;
-            title = responseBody.substring(responseBody.indexOf("<title>") + 7, responseBody.indexOf("</title>"));
-            if (title.equals("301 moved permanently")) {
-                response = new URL(url.replace("http", "https")).openStream();
-                scanner = new Scanner(response);
-                responseBody = scanner.useDelimiter("\\A").next();
-                responseBody = responseBody.toLowerCase(Locale.ROOT);
-                title = responseBody.substring(responseBody.indexOf("<title>") + 7, responseBody.indexOf("</title>"));
-                return title;
-            }
-            return title.replace("\n", "");
-        } catch (Exception e) {
-            return "NoTitle";
-        }
+        return getContent().getTitle();
     }
 
     public String getLastModificationTime() {
-        URL link = null;
-        try {
-            link = new URL(url);
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-            System.out.println("this should not happened");
-        }
-        URLConnection uCon = null;
-        try {
-            assert link != null;
-            uCon = link.openConnection();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("this should not happened");
-        }
-        assert uCon != null;
-        String date = uCon.getHeaderField("Last-Modified");
-        if (date == null) {
-            date = uCon.getHeaderField("Date");
-            if (date == null) {
-                return getLastModificationTime();
-            }
-        }
-        return date;
+        return getPage().getLastModificationTime();
     }
 
-    public String getPageSize() {
-        URL link = null;
-        try {
-            link = new URL(url);
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-            System.out.println("this should not happened");
-        }
-        HttpURLConnection httpCon = null;
-        try {
-            assert link != null;
-            httpCon = (HttpURLConnection) link.openConnection();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("this should not happened");
-        }
-
-        assert httpCon != null;
-        long date = httpCon.getContentLength();
-        if (date == -1)
-            return getTotalNumOfChar() + " char";
-        else
-            return date + " bytes";
+    /**
+     * @return ETag of the page, null if there is none
+     */
+    public String getEtag() {
+        return getPage().getHeader("ETag");
     }
 
-    private void getWords() {
-        if (words == null) {
-            StringBean bean = new StringBean();
-            bean.setURL(url);
-            bean.setLinks(false);
-            words = bean.getStrings();
-        }
+    public byte[] getContentHash() {
+        return getPage().getContentHash();
     }
 
-    private String getTotalNumOfChar() {
-        getWords();
-        String contents = words;
-        contents = contents.replace("\n", "");
-        return String.valueOf(contents.length());
+    public String getPageSize() {
+        long size = getPage().getContentLength();
+        if (size == -1)
+            return getContent().getNumOfChar() + " char";
+        else
+            return size + " bytes";
     }
 
     public Vector<String> getKeywords() {
-        getWords();
-        String contents = words;
-        Vector<String> words = new Vector<>();
-        StringTokenizer st = new StringTokenizer(contents);
-        while (st.hasMoreTokens()) {
-            words.add(st.nextToken());
+        if (keywords == null) {
+            keywords = extractKeywords();
         }
+        return new Vector<>(keywords);
+    }
+
+    /**
+     * SimHash of the keywords of the page
+     * @return the fingerprint, null if the page is too short to be compared with the others
+     */
+    public Long getFingerprint() {
+        if (fingerprint == null && SimHash.numOfShingle(getKeywords()) >= NearDuplicates.MIN_SHINGLES) {
+            fingerprint = SimHash.fingerprint(keywords);
+        }
+        return fingerprint;
+    }
 
+    private Vector<String> extractKeywords() {
         Vector<String> keywords = new Vector<>();
-        for (String oneWord : words) {
+        for (String oneWord : getContent().getWords()) {
             if (Word.isMeaningfulWord(oneWord)) {
                 oneWord = Word.porterAlgorithm(oneWord);
                 keywords.add(oneWord);
@@ -23,8 +23,40 @@ public class Converter {
         return queue;
     }
 
+    /**
+     * key codec of all database, an ID is stored as 4 byte big-endian
+     * so that keys are sorted in numeric order
+     * @param id non-negative ID
+     * @return the key
+     */
     public static byte[] idTobyteArray(int id) {
-        return String.valueOf(id).getBytes();
+        return new byte[]{(byte) (id >>> 24), (byte) (id >>> 16), (byte) (id >>> 8), (byte) id};
+    }
+
+    /**
+     * key of a pair of ID, sorted by the first ID then the second one
+     * @param id1 first ID
+     * @param id2 second ID
+     * @return the key
+     */
+    public static byte[] idPairTobyteArray(int id1, int id2) {
+        return new byte[]{(byte) (id1 >>> 24), (byte) (id1 >>> 16), (byte) (id1 >>> 8), (byte) id1,
+                (byte) (id2 >>> 24), (byte) (id2 >>> 16), (byte) (id2 >>> 8), (byte) id2};
+    }
+
+    /**
+     * decode an ID written by idTobyteArray
+     * @param key the key
+     * @param offset position of the ID in the key
+     * @return the ID
+     */
+    public static int byteArrayToId(byte[] key, int offset) {
+        return ((key[offset] & 0xFF) << 24) | ((key[offset + 1] & 0xFF) << 16)
+                | ((key[offset + 2] & 0xFF) << 8) | (key[offset + 3] & 0xFF);
+    }
+
+    public static int byteArrayToId(byte[] key) {
+        return byteArrayToId(key, 0);
     }
 
 }
@@ -4,56 +4,89 @@ package util;
  * Compile it, import the Porter class into you program and create an instance.
  * Then use the stripAffixes method of this method which takes a String as
  * input and returns the stem of this String again as a String.
+ * the word is stemmed in place in a char buffer of the calling thread, only the returned stem is
+ * allocated, so an instance can be shared by threads. the stems are the same as the ones of the
+ * original translation, which allocated new strings at every step, since the index is built with them
  * @author  Fotis Lazarinis (actually I translated from C to Java)
  * @date    June 1997
  * @address Psilovraxou 12, Agrinio, 30100
  */
 class Porter {
-
-    static class NewString {
-        String str;
-        NewString() {
-            str = "";
+    private static final char[][][] STEP2_SUFFIXES = toChars(new String[][]{{"ational", "ate"},
+            {"tional", "tion"},
+            {"enci", "ence"},
+            {"anci", "ance"},
+            {"izer", "ize"},
+            {"iser", "ize"},
+            {"abli", "able"},
+            {"alli", "al"},
+            {"entli", "ent"},
+            {"eli", "e"},
+            {"ousli", "ous"},
+            {"ization", "ize"},
+            {"isation", "ize"},
+            {"ation", "ate"},
+            {"ator", "ate"},
+            {"alism", "al"},
+            {"iveness", "ive"},
+            {"fulness", "ful"},
+            {"ousness", "ous"},
+            {"aliti", "al"},
+            {"iviti", "ive"},
+            {"biliti", "ble"}});
+    private static final char[][][] STEP3_SUFFIXES = toChars(new String[][]{{"icate", "ic"},
+            {"ative", ""},
+            {"alize", "al"},
+            {"alise", "al"},
+            {"iciti", "ic"},
+            {"ical", "ic"},
+            {"ful", ""},
+            {"ness", ""}});
+    private static final char[][] STEP4_SUFFIXES = toChars(new String[]{"al", "ance", "ence", "er", "ic", "able",
+            "ible", "ant", "ement", "ment", "ent", "sion", "tion", "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"});
+    private static final char[][] PREFIXES = toChars(new String[]{"kilo", "micro", "milli", "intra", "ultra", "mega",
+            "nano", "pico", "pseudo"});
+    private static final char[] SSES = "sses".toCharArray(), IES = "ies".toCharArray(), EED = "eed".toCharArray(),
+            ED = "ed".toCharArray(), ING = "ing".toCharArray(), AT = "at".toCharArray(), BL = "bl".toCharArray(),
+            IZ = "iz".toCharArray(), Y = "y".toCharArray();
+
+    private static final boolean ASCII_LOCALE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[64]);
+
+    private static char[][] toChars(String[] strings) {
+        char[][] chars = new char[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            chars[i] = strings[i].toCharArray();
         }
+        return chars;
     }
 
-    private String Clean(String str) {
-        int last = str.length();
-        StringBuilder temp = new StringBuilder();
-
-        for (int i = 0; i < last; i++) {
-            if (Character.isLetterOrDigit(str.charAt(i))) {
-                temp.append(str.charAt(i));
-            }
+    private static char[][][] toChars(String[][] pairs) {
+        char[][][] chars = new char[pairs.length][][];
+        for (int i = 0; i < pairs.length; i++) {
+            chars[i] = toChars(pairs[i]);
         }
-        return temp.toString();
+        return chars;
     }
 
-    private boolean hasSuffix(String word, String suffix, NewString stem) {
-        StringBuilder tmp;
-        if (word.length() <= suffix.length()) {
+    /**
+     * @return whether the word is longer than the suffix and end with it
+     */
+    private static boolean hasSuffix(char[] word, int length, char[] suffix) {
+        if (length <= suffix.length) {
             return false;
         }
-        if (suffix.length() > 1) {
-            if (word.charAt(word.length() - 2) != suffix.charAt(suffix.length() - 2)) {
+        for (int i = 1; i <= suffix.length; i++) {
+            if (word[length - i] != suffix[suffix.length - i]) {
                 return false;
             }
         }
-
-        stem.str = "";
-
-        for (int i = 0; i < word.length() - suffix.length(); i++) {
-            stem.str += word.charAt(i);
-        }
-        tmp = new StringBuilder(stem.str);
-
-        for (int i = 0; i < suffix.length(); i++) {
-            tmp.append(suffix.charAt(i));
-        }
-        return tmp.toString().compareTo(word) == 0;
+        return true;
     }
 
-    private boolean vowel(char ch, char prev) {
+    private static boolean vowel(char ch, char prev) {
 
         switch (ch) {
             case 'a':
@@ -81,32 +114,22 @@ class Porter {
         }
     }
 
-    private int measure(String stem) {
+    /**
+     * @return number of vowel-consonant sequence of the first length characters
+     */
+    private static int measure(char[] stem, int length) {
         int i = 0, count = 0;
-        int length = stem.length();
 
         while (i < length) {
             for (; i < length; i++) {
-                if (i > 0) {
-                    if (vowel(stem.charAt(i), stem.charAt(i - 1))) {
-                        break;
-                    }
-                } else {
-                    if (vowel(stem.charAt(i), 'a')) {
-                        break;
-                    }
+                if (vowel(stem[i], i > 0 ? stem[i - 1] : 'a')) {
+                    break;
                 }
             }
 
             for (i++; i < length; i++) {
-                if (i > 0) {
-                    if (!vowel(stem.charAt(i), stem.charAt(i - 1))) {
-                        break;
-                    }
-                } else {
-                    if (!vowel(stem.charAt(i), '?')) {
-                        break;
-                    }
+                if (!vowel(stem[i], stem[i - 1])) {
+                    break;
                 }
             }
             if (i < length) {
@@ -117,269 +140,226 @@ class Porter {
         return (count);
     }
 
-    private boolean containsVowel(String word) {
-        for (int i = 0; i < word.length(); i++) {
-            if (i > 0) {
-                if (vowel(word.charAt(i), word.charAt(i - 1))) {
-                    return true;
-                }
-            } else {
-                if (vowel(word.charAt(0), 'a')) {
-                    return true;
-                }
+    private static boolean containsVowel(char[] word, int length) {
+        for (int i = 0; i < length; i++) {
+            if (vowel(word[i], i > 0 ? word[i - 1] : 'a')) {
+                return true;
             }
         }
         return false;
     }
 
-    private boolean cvc(String str) {
-        int length = str.length();
-
+    private static boolean cvc(char[] str, int length) {
         if (length < 3)
             return false;
 
-        if ((!vowel(str.charAt(length - 1), str.charAt(length - 2)))
-                && (str.charAt(length - 1) != 'w') && (str.charAt(length - 1) != 'x') && (str.charAt(length - 1) != 'y')
-                && (vowel(str.charAt(length - 2), str.charAt(length - 3)))) {
+        if ((!vowel(str[length - 1], str[length - 2]))
+                && (str[length - 1] != 'w') && (str[length - 1] != 'x') && (str[length - 1] != 'y')
+                && (vowel(str[length - 2], str[length - 3]))) {
             if (length == 3) {
-                return !vowel(str.charAt(0), '?');
+                return !vowel(str[0], '?');
             } else {
-                return !vowel(str.charAt(length - 3), str.charAt(length - 4));
+                return !vowel(str[length - 3], str[length - 4]);
             }
         }
         return false;
     }
 
-    private String step1(String str) {
-        NewString stem = new NewString();
-        if (str.charAt(str.length() - 1) == 's') {
-            if ((hasSuffix(str, "sses", stem)) || (hasSuffix(str, "ies", stem))) {
-                StringBuilder tmp = new StringBuilder();
-                for (int i = 0; i < str.length() - 2; i++) {
-                    tmp.append(str.charAt(i));
-                }
-                str = tmp.toString();
+    /**
+     * the steps take the word in str[0, length) and return the length of the result,
+     * a suffix is never replaced by a longer one so the buffer is large enough
+     */
+    private static int step1(char[] str, int length) {
+        if (str[length - 1] == 's') {
+            if (hasSuffix(str, length, SSES) || hasSuffix(str, length, IES)) {
+                length -= 2;
             } else {
-                if ((str.length() == 1) && (str.charAt(str.length() - 1) == 's')) {
-                    str = "";
-                    return str;
+                if (length == 1) {
+                    return 0;
                 }
-                if (str.charAt(str.length() - 2) != 's') {
-                    StringBuilder tmp = new StringBuilder();
-                    for (int i = 0; i < str.length() - 1; i++) {
-                        tmp.append(str.charAt(i));
-                    }
-                    str = tmp.toString();
+                if (str[length - 2] != 's') {
+                    length--;
                 }
             }
         }
-        if (hasSuffix(str, "eed", stem)) {
-            if (measure(stem.str) > 0) {
-                StringBuilder tmp = new StringBuilder();
-                for (int i = 0; i < str.length() - 1; i++) {
-                    tmp.append(str.charAt(i));
-                }
-                str = tmp.toString();
+        if (hasSuffix(str, length, EED)) {
+            if (measure(str, length - EED.length) > 0) {
+                length--;
             }
         } else {
-            if ((hasSuffix(str, "ed", stem)) || (hasSuffix(str, "ing", stem))) {
-                if (containsVowel(stem.str)) {
-                    StringBuilder tmp = new StringBuilder();
-                    for (int i = 0; i < stem.str.length(); i++) {
-                        tmp.append(str.charAt(i));
-                    }
-                    str = tmp.toString();
-                    if (str.length() == 1) {
-                        return str;
-                    }
+            int stem = hasSuffix(str, length, ED) ? length - ED.length
+                    : hasSuffix(str, length, ING) ? length - ING.length : -1;
+            if (stem != -1 && containsVowel(str, stem)) {
+                length = stem;
+                if (length == 1) {
+                    return length;
+                }
+
+                if (hasSuffix(str, length, AT) || hasSuffix(str, length, BL) || hasSuffix(str, length, IZ)) {
+                    str[length++] = 'e';
 
-                    if ((hasSuffix(str, "at", stem)) || (hasSuffix(str, "bl", stem))
-                            || (hasSuffix(str, "iz", stem))) {
-                        str += "e";
-
-                    } else {
-                        int length = str.length();
-                        if ((str.charAt(length - 1) == str.charAt(length - 2))
-                                && (str.charAt(length - 1) != 'l') && (str.charAt(length - 1) != 's')
-                                && (str.charAt(length - 1) != 'z')) {
-
-                            tmp = new StringBuilder();
-                            for (int i = 0; i < str.length() - 1; i++) {
-                                tmp.append(str.charAt(i));
-                            }
-                            str = tmp.toString();
-                        } else if (measure(str) == 1) {
-                            if (cvc(str))
-                                str += "e";
-                        }
+                } else {
+                    char last = str[length - 1];
+                    if (last == str[length - 2] && last != 'l' && last != 's' && last != 'z') {
+                        length--;
+                    } else if (measure(str, length) == 1) {
+                        if (cvc(str, length))
+                            str[length++] = 'e';
                     }
                 }
             }
         }
 
-        if (hasSuffix(str, "y", stem))
-            if (containsVowel(stem.str)) {
-                StringBuilder tmp = new StringBuilder();
-                for (int i = 0; i < str.length() - 1; i++) {
-                    tmp.append(str.charAt(i));
-                }
-                str = tmp + "i";
+        if (hasSuffix(str, length, Y))
+            if (containsVowel(str, length - 1)) {
+                str[length - 1] = 'i';
             }
-        return str;
+        return length;
     }
 
-    private String step2(String str) {
-        String[][] suffixes = {{"ational", "ate"},
-                {"tional", "tion"},
-                {"enci", "ence"},
-                {"anci", "ance"},
-                {"izer", "ize"},
-                {"iser", "ize"},
-                {"abli", "able"},
-                {"alli", "al"},
-                {"entli", "ent"},
-                {"eli", "e"},
-                {"ousli", "ous"},
-                {"ization", "ize"},
-                {"isation", "ize"},
-                {"ation", "ate"},
-                {"ator", "ate"},
-                {"alism", "al"},
-                {"iveness", "ive"},
-                {"fulness", "ful"},
-                {"ousness", "ous"},
-                {"aliti", "al"},
-                {"iviti", "ive"},
-                {"biliti", "ble"}};
-        NewString stem = new NewString();
-        for (String[] suffix : suffixes) {
-            if (hasSuffix(str, suffix[0], stem)) {
-                if (measure(stem.str) > 0) {
-                    str = stem.str + suffix[1];
-                    return str;
+    /**
+     * replace the first suffix found whose stem has a positive measure (steps 2 and 3)
+     */
+    private static int replaceSuffix(char[] str, int length, char[][][] suffixes) {
+        for (char[][] suffix : suffixes) {
+            if (hasSuffix(str, length, suffix[0])) {
+                int stem = length - suffix[0].length;
+                if (measure(str, stem) > 0) {
+                    System.arraycopy(suffix[1], 0, str, stem, suffix[1].length);
+                    return stem + suffix[1].length;
                 }
             }
         }
-        return str;
+        return length;
     }
 
-    private String step3(String str) {
-
-        String[][] suffixes = {{"icate", "ic"},
-                {"ative", ""},
-                {"alize", "al"},
-                {"alise", "al"},
-                {"iciti", "ic"},
-                {"ical", "ic"},
-                {"ful", ""},
-                {"ness", ""}};
-        NewString stem = new NewString();
-
-        for (String[] suffix : suffixes) {
-            if (hasSuffix(str, suffix[0], stem)) {
-                if (measure(stem.str) > 0) {
-                    str = stem.str + suffix[1];
-                    return str;
+    private static int step4(char[] str, int length) {
+        for (char[] suffix : STEP4_SUFFIXES) {
+            if (hasSuffix(str, length, suffix)) {
+                if (measure(str, length - suffix.length) > 1) {
+                    return length - suffix.length;
                 }
             }
         }
-        return str;
+        return length;
     }
 
-    private String step4(String str) {
-
-        String[] suffixes = {"al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement", "ment", "ent", "sion", "tion",
-                "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"};
-
-        NewString stem = new NewString();
-        for (String suffix : suffixes) {
-            if (hasSuffix(str, suffix, stem)) {
-                if (measure(stem.str) > 1) {
-                    str = stem.str;
-                    return str;
+    private static int step5(char[] str, int length) {
+        if (str[length - 1] == 'e') {
+            int measure = measure(str, length);
+            if (measure > 1) {                   /* measure(str)==measure(stem) if ends in vowel */
+                length--;
+            } else if (measure == 1) {
+                if (!cvc(str, length - 1)) {
+                    length--;
                 }
             }
         }
-        return str;
-    }
 
-    private String step5(String str) {
-        if (str.charAt(str.length() - 1) == 'e') {
-            if (measure(str) > 1) {                   /* measure(str)==measure(stem) if ends in vowel */
-                StringBuilder tmp = new StringBuilder();
-                for (int i = 0; i < str.length() - 1; i++) {
-                    tmp.append(str.charAt(i));
-                }
-                str = tmp.toString();
-            } else if (measure(str) == 1) {
-                StringBuilder stem = new StringBuilder();
-                for (int i = 0; i < str.length() - 1; i++) {
-                    stem.append(str.charAt(i));
-                }
-                if (!cvc(stem.toString())) {
-                    str = stem.toString();
-                }
-            }
+        if (length == 1) {
+            return length;
         }
-
-        if (str.length() == 1) {
-            return str;
+        if ((str[length - 1] == 'l') && (str[length - 2] == 'l') && (measure(str, length) > 1)) {
+            length--;
         }
-        if ((str.charAt(str.length() - 1) == 'l') && (str.charAt(str.length() - 2) == 'l') && (measure(str) > 1))
-            if (measure(str) > 1) {                       /* measure(str)==measure(stem) if ends in vowel */
-                StringBuilder tmp = new StringBuilder();
-                for (int i = 0; i < str.length() - 1; i++) {
-                    tmp.append(str.charAt(i));
-                }
-                str = tmp.toString();
-            }
-        return str;
+        return length;
     }
 
-    private String stripPrefixes(String str) {
-        String[] prefixes = {"kilo", "micro", "milli", "intra", "ultra", "mega", "nano", "pico", "pseudo"};
-        for (String prefix : prefixes) {
-            if (str.startsWith(prefix)) {
-                StringBuilder temp = new StringBuilder();
-                for (int j = 0; j < str.length() - prefix.length(); j++) {
-                    temp.append(str.charAt(j + prefix.length()));
-                }
-                return temp.toString();
+    /**
+     * @return length of the word once a prefix is removed from str[0, length)
+     */
+    private static int stripPrefixes(char[] str, int length) {
+        for (char[] prefix : PREFIXES) {
+            if (startsWith(str, length, prefix)) {
+                System.arraycopy(str, prefix.length, str, 0, length - prefix.length);
+                return length - prefix.length;
             }
         }
-        return str;
+        return length;
     }
 
+    private static boolean startsWith(char[] str, int length, char[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (str[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-    private String stripSuffixes(String str) {
-        str = step1(str);
-        if (str.length() >= 1) {
-            str = step2(str);
+    private static int stripSuffixes(char[] str, int length) {
+        length = step1(str, length);
+        if (length >= 1) {
+            length = replaceSuffix(str, length, STEP2_SUFFIXES);
+        }
+        if (length >= 1) {
+            length = replaceSuffix(str, length, STEP3_SUFFIXES);
         }
-        if (str.length() >= 1) {
-            str = step3(str);
+        if (length >= 1) {
+            length = step4(str, length);
         }
-        if (str.length() >= 1) {
-            str = step4(str);
+        if (length >= 1) {
+            length = step5(str, length);
         }
-        if (str.length() >= 1) {
-            str = step5(str);
+        return length;
+    }
+
+    /**
+     * @return whether the lower case of the word is the lower case of each of its ASCII letters,
+     * which is not true for non ASCII characters or in some locales (e.g. "I" in Turkish)
+     */
+    private static boolean isAsciiLowerCase(String str) {
+        if (!ASCII_LOCALE) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) >= 0x80) {
+                return false;
+            }
         }
-        return str;
+        return true;
     }
 
+    /**
+     * @return the buffer of this thread, large enough for length characters
+     */
+    private char[] buffer(int length) {
+        char[] buffer = buffers.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
 
     String stripAffixes(String str) {
-        str = str.toLowerCase();
-        str = Clean(str);
+        boolean ascii = isAsciiLowerCase(str);
+        if (!ascii) {
+            str = str.toLowerCase();
+        }
+        char[] buffer = buffer(str.length());
+        // the lower case letters and digits of the word
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ascii && ch >= 'A' && ch <= 'Z') {
+                ch += 'a' - 'A';
+            }
+            if (Character.isLetterOrDigit(ch)) {
+                buffer[length++] = ch;
+            }
+        }
 
-        if ((!str.equals("")) && (str.length() > 2)) {
-            str = stripPrefixes(str);
-            if (!str.equals("")) {
-                str = stripSuffixes(str);
+        if (length > 2) {
+            length = stripPrefixes(buffer, length);
+            if (length > 0) {
+                length = stripSuffixes(buffer, length);
             }
         }
-        return str;
+        return new String(buffer, 0, length);
     } //stripAffixes
 
-} //class
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.List;
+
+/**
+ * 64 bit SimHash of a token stream: every shingle of SHINGLE_SIZE consecutive tokens is hashed, and
+ * bit i of the fingerprint is set if bit i is set in more than half of the shingle hashes.
+ * pages with nearly the same text have fingerprints at a small Hamming distance
+ */
+public class SimHash {
+    public static final int SHINGLE_SIZE = 3;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * @param tokens tokens of a page in order
+     * @return the fingerprint, 0 if there is no token
+     */
+    public static long fingerprint(List<String> tokens) {
+        int[] votes = new int[64];
+        int numOfShingle = numOfShingle(tokens);
+        StringBuilder shingle = new StringBuilder();
+        for (int i = 0; i < numOfShingle; i++) {
+            shingle.setLength(0);
+            for (int j = i; j < i + SHINGLE_SIZE && j < tokens.size(); j++) {
+                shingle.append(tokens.get(j)).append(' ');
+            }
+            long hash = HASH.hashUnencodedChars(shingle).asLong();
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param tokens tokens of a page
+     * @return number of shingle hashed into the fingerprint
+     */
+    public static int numOfShingle(List<String> tokens) {
+        return tokens.isEmpty() ? 0 : Math.max(1, tokens.size() - SHINGLE_SIZE + 1);
+    }
+
+    /**
+     * @return number of different bits
+     */
+    public static int distance(long fingerprint1, long fingerprint2) {
+        return Long.bitCount(fingerprint1 ^ fingerprint2);
+    }
+}
@@ -0,0 +1,215 @@
+package util;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * rewrite the links of a same page into one canonical url, so the page get one ID and is fetched once.
+ * a canonical url:
+ *     has a lower case scheme and host, no default port and no fragment
+ *     is https if its host is known to serve https and it use the default port
+ *     has its host replaced by its alias, then its path rewritten by the first matching path rule
+ *     has no dot segment, no index file ("/a/index.html" is "/a/"), at least "/" as path
+ *     escapes only the characters that must be escaped, in upper case hex
+ * a link that is not http or https, or cannot be parsed, is only trimmed. the trailing characters of a
+ * link are kept, a link is expected to come from an attribute, not from plain text.
+ * rules are added before the canonicalizer is used, getInstance() has the rules of cse.ust.hk
+ */
+public class URLCanonicalizer {
+    private static final URLCanonicalizer INSTANCE = new URLCanonicalizer()
+            .addSecureHost("www.cse.ust.hk")
+            .addSecureHost("home.cse.ust.hk")
+            .addHostAlias("cse.ust.hk", "www.cse.ust.hk")
+            .addPathRule("www.cse.ust.hk", "^/faculty/([^/]+)/", "home.cse.ust.hk", "/~$1/")
+            .addIndexFile("index.html")
+            .addIndexFile("index.htm");
+    private static final String UNRESERVED = "-._~";
+
+    private final Map<String, String> hostAliases = new HashMap<>();
+    private final List<PathRule> pathRules = new ArrayList<>();
+    private final Set<String> secureHosts = new HashSet<>();
+    private final Set<String> indexFiles = new HashSet<>();
+
+    private static class PathRule {
+        private final String host;
+        private final Pattern path;
+        private final String canonicalHost;
+        private final String replacement;
+
+        private PathRule(String host, Pattern path, String canonicalHost, String replacement) {
+            this.host = host;
+            this.path = path;
+            this.canonicalHost = canonicalHost;
+            this.replacement = replacement;
+        }
+    }
+
+    public static URLCanonicalizer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param host host in lower case
+     * @param canonicalHost host used instead
+     * @return this canonicalizer
+     */
+    public URLCanonicalizer addHostAlias(String host, String canonicalHost) {
+        hostAliases.put(host, canonicalHost);
+        return this;
+    }
+
+    /**
+     * rewrite the path of a host matching a pattern, e.g. "/faculty/x/" on www.cse.ust.hk is "/~x/"
+     * on home.cse.ust.hk
+     * @param host host the rule apply to, after its alias
+     * @param pathRegex pattern found in the path
+     * @param canonicalHost host used instead
+     * @param replacement replacement of the first match, may refer to the groups of the pattern by $n
+     * @return this canonicalizer
+     */
+    public URLCanonicalizer addPathRule(String host, String pathRegex, String canonicalHost, String replacement) {
+        pathRules.add(new PathRule(host, Pattern.compile(pathRegex), canonicalHost, replacement));
+        return this;
+    }
+
+    /**
+     * @param host host in lower case serving every page by https, a subdomain may only serve http
+     * @return this canonicalizer
+     */
+    public URLCanonicalizer addSecureHost(String host) {
+        secureHosts.add(host);
+        return this;
+    }
+
+    /**
+     * @param name file served for a directory, dropped from the path
+     * @return this canonicalizer
+     */
+    public URLCanonicalizer addIndexFile(String name) {
+        indexFiles.add(name);
+        return this;
+    }
+
+    /**
+     * @param url a link, e.g. an attribute of a tag, it is not cut
+     * @return the canonical url of the link
+     */
+    public String canonicalize(String url) {
+        String link = url.trim();
+        int fragment = link.indexOf('#');
+        if (fragment >= 0) {
+            link = link.substring(0, fragment);
+        }
+        URI uri;
+        try {
+            uri = new URI(escapeIllegal(link)).normalize();
+        } catch (URISyntaxException e) {
+            return link;
+        }
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (uri.getHost() == null || !("http".equals(scheme) || "https".equals(scheme))) {
+            return link;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        host = hostAliases.getOrDefault(host, host);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : normalizeEscapes(uri.getRawPath());
+        for (PathRule rule : pathRules) {
+            Matcher matcher;
+            if (rule.host.equals(host) && (matcher = rule.path.matcher(path)).find()) {
+                host = rule.canonicalHost;
+                path = matcher.replaceFirst(rule.replacement);
+                break;
+            }
+        }
+        int lastSlash = path.lastIndexOf('/');
+        if (indexFiles.contains(path.substring(lastSlash + 1))) {
+            path = path.substring(0, lastSlash + 1);
+        }
+        int port = uri.getPort();
+        // a secure host on a port other than the default one is left as it is
+        if (secureHosts.contains(host) && scheme.equals("http") && (port == -1 || port == 80)) {
+            scheme = "https";
+            port = -1;
+        }
+        if ((scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443)) {
+            port = -1;
+        }
+        String query = uri.getRawQuery() == null || uri.getRawQuery().isEmpty() ? "" : "?" + normalizeEscapes(uri.getRawQuery());
+        return scheme + "://" + host + (port == -1 ? "" : ":" + port) + path + query;
+    }
+
+    /**
+     * percent-encode the characters not allowed in a URI, such as space and non ASCII characters
+     */
+    private static String escapeIllegal(String link) {
+        StringBuilder result = null;
+        for (int i = 0; i < link.length(); i++) {
+            char c = link.charAt(i);
+            if (c > ' ' && c < 127 && "\"<>\\^`{|}".indexOf(c) < 0) {
+                if (result != null) {
+                    result.append(c);
+                }
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(link.substring(0, i));
+            }
+            int codePoint = link.codePointAt(i);
+            for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                result.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+            i += Character.charCount(codePoint) - 1;
+        }
+        return result == null ? link : result.toString();
+    }
+
+    /**
+     * decode the escaped unreserved characters and write the other escapes in upper case
+     */
+    private static String normalizeEscapes(String s) {
+        if (s.indexOf('%') < 0) {
+            return s;
+        }
+        StringBuilder result = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int high, low;
+            if (c == '%' && i + 2 < s.length() && (high = Character.digit(s.charAt(i + 1), 16)) >= 0
+                    && (low = Character.digit(s.charAt(i + 2), 16)) >= 0) {
+                char decoded = (char) (high * 16 + low);
+                if ((decoded >= 'a' && decoded <= 'z') || (decoded >= 'A' && decoded <= 'Z')
+                        || (decoded >= '0' && decoded <= '9') || UNRESERVED.indexOf(decoded) >= 0) {
+                    result.append(decoded);
+                } else {
+                    result.append('%').append(s.substring(i + 1, i + 3).toUpperCase(Locale.ROOT));
+                }
+                i += 2;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public static void main(String[] args) {
+        URLCanonicalizer canonicalizer = getInstance();
+        String[] links = args.length > 0 ? args : new String[]{
+                "http://www.cse.ust.hk", "HTTPS://WWW.CSE.UST.HK:443/index.html#top", "http://cse.ust.hk/",
+                "http://www.cse.ust.hk/faculty/rossiter/independent_studies_projects/a.html",
+                "https://home.cse.ust.hk/~rossiter/independent_studies_projects/a.html",
+                "http://www.cse.ust.hk/admin/../news/./list.htm?id=%7e1&x=%2f", "http://www.cse.ust.hk/wiki/Foo_(bar)",
+                "http://lab.cse.ust.hk/", "mailto:someone@cse.ust.hk", "http://example.com:80/Index.html",
+                "http://example.com:8080"};
+        for (String link : links) {
+            System.out.println(link + " -> " + canonicalizer.canonicalize(link));
+        }
+    }
+}
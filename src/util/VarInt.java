@@ -0,0 +1,67 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * variable length encoding of non-negative int, 7 bits per byte, lowest group first.
+ * the highest bit of a byte is set if more byte follow
+ */
+public class VarInt {
+
+    /**
+     * append the encoded value to the output
+     * @param out output stream
+     * @param value non-negative value
+     */
+    public static void write(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * @param value non-negative value
+     * @return number of byte of the encoded value
+     */
+    public static int size(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * read one value and move the position of the buffer to the next value
+     * @param in input buffer
+     * @return decoded value
+     */
+    public static int read(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * move the position of the buffer over n values without decoding them
+     * @param in input buffer
+     * @param n number of values to skip
+     */
+    public static void skip(ByteBuffer in, int n) {
+        while (n > 0) {
+            if ((in.get() & 0x80) == 0) {
+                n--;
+            }
+        }
+    }
+}
@@ -122,6 +122,7 @@
 <%@ page import="indexer.PageProperty" %>
 <%@ page import="retriever.PreProcessor" %>
 <%@ page import="retriever.Retrieval" %>
+<%@ page import="retriever.Snapshot" %>
 <%@ page import="java.util.Map" %>
 <%@ page import="java.util.LinkedHashMap" %>
 
@@ -148,8 +149,10 @@ if(request.getParameter("input")!=null || request.getParameterValues("selectedWo
 	out.println("<div class='search'><div class='icon'><i class=\"fa fa-search\"></i></div>" +
 			"<div class='input'>" + query + "</div></div>");
 
+	// the snapshot exported for the search nodes is used if there is one, otherwise the database
+	Snapshot snapshot = Snapshot.getInstance();
 	double startTime = System.nanoTime();
-    Retrieval retrieval = new Retrieval(query);
+    Retrieval retrieval = snapshot != null ? new Retrieval(query, snapshot) : new Retrieval(query);
     double duration = (System.nanoTime() - startTime) / 1000000000;
 	LinkedHashMap<Integer, Double> result = retrieval.getResult();
 
@@ -160,14 +163,26 @@ if(request.getParameter("input")!=null || request.getParameterValues("selectedWo
 		out.println("<div class='content'><table>");
 		for(Map.Entry<Integer, Double> resultEntry: result.entrySet()){
 			Integer id = resultEntry.getKey();
-			LinkedHashMap<String, Integer> sortedWordList = InvertedIndex.getInstance().getSortedWordFreqWordList(id);
 			double doc_score = (double)Math.round(resultEntry.getValue() * 100000d) / 100000d;
-			String url = PageProperty.getInstance().getUrl(id);
-			String title = PageProperty.getInstance().getTitle(id);
-			String mod_time = PageProperty.getInstance().getLastModificationTime(id);
-			String size = PageProperty.getInstance().getSize(id);
-			String ChildLinks = InvertedIndex.getInstance().getChildPages(id);
-			String ParentLinks = PreProcessor.getInstance().getParentPages(id);
+			LinkedHashMap<String, Integer> sortedWordList;
+			String url, title, mod_time, size, ChildLinks, ParentLinks;
+			if (snapshot != null) {
+				sortedWordList = snapshot.getSortedWordFreqWordList(id);
+				url = snapshot.getUrl(id);
+				title = snapshot.getTitle(id);
+				mod_time = snapshot.getLastModificationTime(id);
+				size = snapshot.getSize(id);
+				ChildLinks = snapshot.getChildPages(id);
+				ParentLinks = snapshot.getParentPages(id);
+			} else {
+				sortedWordList = InvertedIndex.getInstance().getSortedWordFreqWordList(id);
+				url = PageProperty.getInstance().getUrl(id);
+				title = PageProperty.getInstance().getTitle(id);
+				mod_time = PageProperty.getInstance().getLastModificationTime(id);
+				size = PageProperty.getInstance().getSize(id);
+				ChildLinks = InvertedIndex.getInstance().getChildPages(id);
+				ParentLinks = PreProcessor.getInstance().getParentPages(id);
+			}
 			out.println("<tr>");
 			out.println("<td class='s' rowspan='4'><div class='score'>"+ doc_score + "</div></td>");
 			out.println("<td><div class='page'><div class='title'><a href='" + url + "'>" + title + "</a></div><div class='url'>" + url + "</div><div class='modTime'>" + mod_time + "</div><div class='size'>" + size + "</div></div></td>");